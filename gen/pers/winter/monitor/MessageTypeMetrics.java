@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.monitor;
+
+import pers.winter.framework.monitor.AbstractBaseMonitorBean;
+
+public class MessageTypeMetrics extends AbstractBaseMonitorBean {
+    public String msgClass;
+    public long handledNum;
+    public long retryNum;
+    public long failNum;
+    public long rateLimitedNum;
+    public long decodeToEnqueueP99Us;
+    public double queueWaitMeanUs;
+    public long queueWaitP99Us;
+    public double handlerMeanUs;
+    public long handlerP99Us;
+    public long handlerTotalMs;
+    public double commitMeanUs;
+    public long commitP99Us;
+}
@@ -42,7 +42,7 @@ public class LoginSocketService {
     private static final Logger logger = LogManager.getLogger(LoginSocketService.class);
     private static final AttributeKey<Long> ATTRIBUTE_KEY_ACCOUNT_ID = AttributeKey.valueOf("accountId");
 
-    @AnnMessageMethod(retryCount = 0)
+    @AnnMessageMethod(retryCount = 0, priority = AnnMessageMethod.Priority.HIGH)
     public void handshake(Handshake request) {
         HandshakeResponse response = new HandshakeResponse();
         if (!ServerAllocator.verifySignature(request.accountId, request.timestamp, request.signature)) {
@@ -69,7 +69,7 @@ public class LoginSocketService {
         request.getChannel().writeAndFlush(response);
     }
 
-    @AnnMessageMethod(retryCount = 0)
+    @AnnMessageMethod(retryCount = 0, priority = AnnMessageMethod.Priority.HIGH)
     public void roleLogin(RoleLogin request) throws Exception {
         Long accountID = request.getChannel().attr(ATTRIBUTE_KEY_ACCOUNT_ID).getAndSet(null);
         RoleLoginResponse response = new RoleLoginResponse();
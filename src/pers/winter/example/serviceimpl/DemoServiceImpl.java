@@ -30,7 +30,7 @@ import java.util.List;
 @AnnMessageServiceImpl
 public class DemoServiceImpl {
     private static final Logger logger = LogManager.getLogger(DemoServiceImpl.class);
-    @AnnMessageMethod(retryCount = 10)
+    @AnnMessageMethod(retryCount = 10, rateLimit = 10, rateLimitAction = AnnMessageMethod.RateLimitAction.FAIL)
     public void hello(Hello request){
         logger.info("Receive Hello: {}", JSON.toJSONString(request));
         try{
@@ -59,6 +59,7 @@ public class DemoServiceImpl {
         request.getChannel().writeAndFlush(response);
     }
 
+    @AnnMessageMethod(retryCount = 0, inline = true)
     public void bye(Bye request){
         logger.info("Receive Bye: {}", JSON.toJSONString(request));
         Bye response = new Bye();
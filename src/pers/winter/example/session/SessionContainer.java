@@ -23,7 +23,11 @@ import org.apache.logging.log4j.Logger;
 import pers.winter.example.Constants;
 import pers.winter.example.config.GameConfig;
 import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.server.codec.MessageBroadcaster;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -82,4 +86,37 @@ public class SessionContainer {
     public UserSession getSession(long uid){
         return sessions.getIfPresent(uid);
     }
+
+    /**
+     * Sends a message to all sessions, the message is serialized only once, see {@link MessageBroadcaster}.
+     *
+     * @param message The message object to be sent.
+     * @return The count of sessions the message is written to.
+     */
+    public int broadcast(Object message){
+        List<Channel> channels = new ArrayList<>();
+        for(UserSession session : sessions.asMap().values()){
+            channels.add(session.getChannel());
+        }
+        return MessageBroadcaster.broadcast(message, channels);
+    }
+
+    /**
+     * Sends a message to the sessions of the given UIDs, the message is serialized only once, see {@link MessageBroadcaster}.
+     * UIDs without a session are skipped.
+     *
+     * @param message The message object to be sent.
+     * @param uids    The unique identifiers of the receivers.
+     * @return The count of sessions the message is written to.
+     */
+    public int multicast(Object message, Collection<Long> uids){
+        List<Channel> channels = new ArrayList<>(uids.size());
+        for(long uid : uids){
+            UserSession session = sessions.getIfPresent(uid);
+            if(session != null){
+                channels.add(session.getChannel());
+            }
+        }
+        return MessageBroadcaster.broadcast(message, channels);
+    }
 }
@@ -18,29 +18,58 @@ package pers.winter.framework.cache.thread;
 import pers.winter.framework.db.AbstractBaseEntity;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The ThreadCacheManager class manages inside-thread caches for entities.
+ * Caches are kept in a ThreadLocal, so they work the same on platform threads and on short-lived virtual threads.
  * @author Winter
  */
 public class ThreadCacheManager {
     public static final ThreadCacheManager INSTANCE = new ThreadCacheManager();
-    private Map<Thread,ThreadCache> threadCaches = new ConcurrentHashMap<>();
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<>();
     private ThreadCacheManager(){}
     /**
      * Initializes the thread cache for the current thread.
      */
     public void initThread(){
-        threadCaches.put(Thread.currentThread(), new ThreadCache());
+        threadCaches.set(new ThreadCache());
     }
     /**
      * Remove the thread cache for the current thread.
      */
     public void removeThread(){
-        threadCaches.remove(Thread.currentThread());
+        threadCaches.remove();
+    }
+    /**
+     * Gets the thread cache of the current thread.
+     * @return The thread cache, or null if it is not initialized.
+     */
+    public ThreadCache getThreadCache(){
+        return threadCaches.get();
+    }
+    /**
+     * Detach the thread cache from the current thread, so that a transaction waiting for an asynchronous call can be continued in another thread.
+     * @return The thread cache of the current thread, or null if it is not initialized.
+     */
+    public ThreadCache detachThread(){
+        ThreadCache threadCache = threadCaches.get();
+        threadCaches.remove();
+        return threadCache;
+    }
+    /**
+     * Attach a thread cache detached by {@link #detachThread()} to the current thread.
+     * @param threadCache The thread cache, null removes the thread cache of the current thread.
+     * @return The thread cache of the current thread before, to be attached back after.
+     */
+    public ThreadCache attachThread(ThreadCache threadCache){
+        ThreadCache previous = threadCaches.get();
+        if(threadCache == null){
+            threadCaches.remove();
+        } else {
+            threadCaches.set(threadCache);
+        }
+        return previous;
     }
     /**
      * Retrieves entities from the thread cache based on the specified key and entity class.
@@ -50,7 +79,7 @@ public class ThreadCacheManager {
      * @return The list of entities retrieved from the thread cache, or null if the cache is not found.
      */
     public <T extends AbstractBaseEntity> List<T> selectByKey(long key, Class<T> entityClass) {
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return null;
         }
@@ -64,7 +93,7 @@ public class ThreadCacheManager {
      * @param <T>         The type of the entity extending AbstractBaseEntity.
      */
     public <T extends AbstractBaseEntity> void syncToCache(long key,List<T> entities,Class<T> entityClass){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return;
         }
@@ -77,7 +106,7 @@ public class ThreadCacheManager {
      * @param <T>         The type of the entity extending AbstractBaseEntity.
      */
     public <T extends AbstractBaseEntity> void syncFromCache(List<T> entities,Class<T> entityClass){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return;
         }
@@ -88,7 +117,7 @@ public class ThreadCacheManager {
      * @param entity The entity changed.
      */
     public void entityChanges(AbstractBaseEntity entity){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return;
         }
@@ -99,7 +128,7 @@ public class ThreadCacheManager {
      * @return The set of entities that have been changed in the thread cache, or null if the cache is not found.
      */
     public Set<AbstractBaseEntity> getEntitiesChanged(){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return null;
         }
@@ -109,7 +138,7 @@ public class ThreadCacheManager {
      * Clears the cached entities in the thread cache.
      */
     public void clearCachedEntities(){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return;
         }
@@ -120,7 +149,7 @@ public class ThreadCacheManager {
      * Sets the runnable runs after commit success
      */
     public void setCommitListener(Runnable listener){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return;
         }
@@ -131,7 +160,7 @@ public class ThreadCacheManager {
      * Gets the runnable runs after commit success
      */
     public Runnable getCommitListener(){
-        ThreadCache threadCache = threadCaches.get(Thread.currentThread());
+        ThreadCache threadCache = threadCaches.get();
         if(threadCache == null){
             return null;
         }
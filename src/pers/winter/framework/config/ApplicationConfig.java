@@ -15,6 +15,8 @@
  */
 package pers.winter.framework.config;
 
+import pers.winter.framework.message.MessageCenter;
+
 @AnnConfig(filePath="config/application.properties")
 public class ApplicationConfig {
     private int socketPort;
@@ -26,6 +28,10 @@ public class ApplicationConfig {
     private long nodeID;
     private int cacheExpire;
     private short timerThreadPoolCount;
+    private String guestKeyMode;
+    private int guestKeyShards;
+    private String trafficCaptureFile;
+    private int trafficCaptureSize;
     public int getSocketPort() {
         return socketPort;
     }
@@ -41,4 +47,10 @@ public class ApplicationConfig {
     public long getNodeID(){return nodeID;}
     public int getCacheExpire(){return cacheExpire;}
     public short getTimerThreadPoolCount(){return timerThreadPoolCount;}
+    public MessageCenter.GuestKeyMode getGuestKeyMode(){
+        return guestKeyMode == null ? MessageCenter.GuestKeyMode.IP : MessageCenter.GuestKeyMode.valueOf(guestKeyMode.trim());
+    }
+    public int getGuestKeyShards(){return guestKeyShards;}
+    public String getTrafficCaptureFile(){return trafficCaptureFile == null ? "" : trafficCaptureFile.trim();}
+    public int getTrafficCaptureSize(){return trafficCaptureSize;}
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.config;
+
+import pers.winter.framework.message.MessageCenter;
+import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+
+/**
+ * Tuning options for the message executor and the database executor.
+ * @author Winter
+ */
+@AnnConfig(filePath = "config/executor.properties")
+public class ExecutorConfig {
+    private String messageScheduleMode;
+    private String databaseScheduleMode;
+    private int messageVirtualThreadConcurrency;
+    private int databaseVirtualThreadConcurrency;
+    private int messageTurnMaxTasks = 1;
+    private long messageTurnMaxTime;
+    private int databaseTurnMaxTasks = 1;
+    private long databaseTurnMaxTime;
+    private int messageUserCapacity;
+    private long messageExecutorCapacity;
+    private String messageRejectPolicy;
+    private long messageBlockTimeout = 1000;
+    private String messageRejectAction;
+    private int databaseUserCapacity;
+    private long databaseExecutorCapacity;
+    private String databaseRejectPolicy;
+    private long databaseBlockTimeout = 1000;
+    private long messageTerminateTimeout;
+    private long databaseTerminateTimeout;
+    private int messageAdaptiveMinThreads;
+    private int messageAdaptiveMaxThreads;
+    private int databaseAdaptiveMinThreads;
+    private int databaseAdaptiveMaxThreads;
+    private String messageWaitStrategy;
+    private int messageSpinTries = 10000;
+    private int messageYieldTries = 100;
+    private String databaseWaitStrategy;
+    private int databaseSpinTries = 10000;
+    private int databaseYieldTries = 100;
+    private boolean messagePriorityLanes;
+    private String messageLanePolicy;
+    private String messageLaneWeights;
+    public FairPoolExecutor.ScheduleMode getMessageScheduleMode(){
+        return messageScheduleMode == null ? FairPoolExecutor.ScheduleMode.GLOBAL : FairPoolExecutor.ScheduleMode.valueOf(messageScheduleMode.trim());
+    }
+    public FairPoolExecutor.ScheduleMode getDatabaseScheduleMode(){
+        return databaseScheduleMode == null ? FairPoolExecutor.ScheduleMode.GLOBAL : FairPoolExecutor.ScheduleMode.valueOf(databaseScheduleMode.trim());
+    }
+    public int getMessageVirtualThreadConcurrency(){return messageVirtualThreadConcurrency;}
+    public int getDatabaseVirtualThreadConcurrency(){return databaseVirtualThreadConcurrency;}
+    public int getMessageTurnMaxTasks(){return messageTurnMaxTasks;}
+    public long getMessageTurnMaxTime(){return messageTurnMaxTime;}
+    public int getDatabaseTurnMaxTasks(){return databaseTurnMaxTasks;}
+    public long getDatabaseTurnMaxTime(){return databaseTurnMaxTime;}
+    public int getMessageUserCapacity(){return messageUserCapacity;}
+    public long getMessageExecutorCapacity(){return messageExecutorCapacity;}
+    public FairPoolExecutor.RejectPolicy getMessageRejectPolicy(){
+        return messageRejectPolicy == null ? FairPoolExecutor.RejectPolicy.REJECT : FairPoolExecutor.RejectPolicy.valueOf(messageRejectPolicy.trim());
+    }
+    public long getMessageBlockTimeout(){return messageBlockTimeout;}
+    public MessageCenter.RejectAction getMessageRejectAction(){
+        return messageRejectAction == null ? MessageCenter.RejectAction.FAIL : MessageCenter.RejectAction.valueOf(messageRejectAction.trim());
+    }
+    public int getDatabaseUserCapacity(){return databaseUserCapacity;}
+    public long getDatabaseExecutorCapacity(){return databaseExecutorCapacity;}
+    public FairPoolExecutor.RejectPolicy getDatabaseRejectPolicy(){
+        return databaseRejectPolicy == null ? FairPoolExecutor.RejectPolicy.REJECT : FairPoolExecutor.RejectPolicy.valueOf(databaseRejectPolicy.trim());
+    }
+    public long getDatabaseBlockTimeout(){return databaseBlockTimeout;}
+    public long getMessageTerminateTimeout(){return messageTerminateTimeout;}
+    public long getDatabaseTerminateTimeout(){return databaseTerminateTimeout;}
+    public int getMessageAdaptiveMinThreads(){return messageAdaptiveMinThreads;}
+    public int getMessageAdaptiveMaxThreads(){return messageAdaptiveMaxThreads;}
+    public int getDatabaseAdaptiveMinThreads(){return databaseAdaptiveMinThreads;}
+    public int getDatabaseAdaptiveMaxThreads(){return databaseAdaptiveMaxThreads;}
+    public FairPoolExecutor.WaitStrategy getMessageWaitStrategy(){
+        return messageWaitStrategy == null ? FairPoolExecutor.WaitStrategy.PARK : FairPoolExecutor.WaitStrategy.valueOf(messageWaitStrategy.trim());
+    }
+    public int getMessageSpinTries(){return messageSpinTries;}
+    public int getMessageYieldTries(){return messageYieldTries;}
+    public FairPoolExecutor.WaitStrategy getDatabaseWaitStrategy(){
+        return databaseWaitStrategy == null ? FairPoolExecutor.WaitStrategy.PARK : FairPoolExecutor.WaitStrategy.valueOf(databaseWaitStrategy.trim());
+    }
+    public int getDatabaseSpinTries(){return databaseSpinTries;}
+    public int getDatabaseYieldTries(){return databaseYieldTries;}
+    public boolean isMessagePriorityLanes(){return messagePriorityLanes;}
+    public FairPoolExecutor.LanePolicy getMessageLanePolicy(){
+        return messageLanePolicy == null ? FairPoolExecutor.LanePolicy.WEIGHTED : FairPoolExecutor.LanePolicy.valueOf(messageLanePolicy.trim());
+    }
+    public int[] getMessageLaneWeights(){
+        if(messageLaneWeights == null || messageLaneWeights.isBlank()){
+            return new int[0];
+        }
+        String[] parts = messageLaneWeights.split(",");
+        int[] weights = new int[parts.length];
+        for(int i = 0;i < parts.length;i++){
+            weights[i] = Integer.parseInt(parts[i].trim());
+        }
+        return weights;
+    }
+}
@@ -20,9 +20,19 @@ public class MonitorConfig {
     private long messageProcessSlowThreshold;
     private long messageQueueOverflowThreshold;
     private long dbQueueOverflowThreshold;
+    private boolean messageMetricsEnabled;
+    private int messageMetricsInterval;
     public long getMessageProcessSlowThreshold() {
         return messageProcessSlowThreshold;
     }
     public long getMessageQueueOverflowThreshold(){return messageQueueOverflowThreshold;}
     public long getDbQueueOverflowThreshold(){return dbQueueOverflowThreshold;}
+    /**
+     * Whether to keep counters and latency histograms per message class, see {@link pers.winter.monitor.MessageTypeMetrics}.
+     */
+    public boolean isMessageMetricsEnabled(){return messageMetricsEnabled;}
+    /**
+     * Interval in seconds to report the metrics per message class.
+     */
+    public int getMessageMetricsInterval(){return messageMetricsInterval;}
 }
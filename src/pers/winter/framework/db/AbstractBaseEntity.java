@@ -19,6 +19,7 @@ import com.alibaba.fastjson.annotation.JSONField;
 import org.bson.Document;
 import pers.winter.framework.cache.thread.ThreadCacheManager;
 import pers.winter.framework.db.mongo.ISerializableMongoObject;
+import pers.winter.framework.entity.EntityManager;
 import pers.winter.framework.entity.ICloneable;
 
 import java.sql.PreparedStatement;
@@ -73,6 +74,7 @@ public abstract class AbstractBaseEntity implements ISerializableMongoObject, IC
      * Priority: delete > insert > update
      */
     private void setAction(Constants.Action action) {
+        EntityManager.INSTANCE.checkEntityAccess();
         if(this.action != null && this.action.toNumber() < action.toNumber()){
             return;
         }
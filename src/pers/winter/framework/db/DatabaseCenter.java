@@ -20,6 +20,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pers.winter.framework.config.ApplicationConfig;
 import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.config.ExecutorConfig;
 import pers.winter.framework.config.MonitorConfig;
 import pers.winter.framework.db.mongo.MongoConnector;
 import pers.winter.framework.db.mysql.MySqlConnector;
@@ -27,6 +28,7 @@ import pers.winter.framework.entity.Transaction;
 import pers.winter.framework.monitor.MonitorCenter;
 import pers.winter.framework.threadpool.IExecutorHandler;
 import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+import pers.winter.framework.threadpool.fair.FairPoolStatistics;
 import pers.winter.framework.timer.TimerTaskManager;
 import pers.winter.framework.utils.SnowFlakeIdGenerator;
 import pers.winter.monitor.ExecutorError;
@@ -43,7 +45,7 @@ public class DatabaseCenter {
     private MySqlConnector mySqlConnector;
     private MongoConnector mongoConnector;
     private FairPoolExecutor<AbstractBaseEntity> executor;
-    private boolean terminated = false;
+    private volatile boolean terminated = false;
     private TimerTaskManager.RepeatedTimerTask monitorTask;
     private DatabaseCenter(){}
 
@@ -55,10 +57,20 @@ public class DatabaseCenter {
         startExecutor();
     }
 
+    /**
+     * Terminate the database center, entities saved by transactions still committing are written until the executor is drained.
+     */
     public void terminate(){
-        terminated = true;
         monitorTask.cancel();
-        this.executor.terminate(false);
+        this.executor.terminate(ConfigManager.INSTANCE.getConfig(ExecutorConfig.class).getDatabaseTerminateTimeout(), TimeUnit.MILLISECONDS, true);
+        terminated = true;
+    }
+
+    /**
+     * Take a snapshot of the database executor metrics, see {@link FairPoolExecutor#getStatistics(boolean)}.
+     */
+    public FairPoolStatistics getExecutorStatistics(boolean reset){
+        return executor.getStatistics(reset);
     }
 
     private void initMonitor(){
@@ -117,7 +129,21 @@ public class DatabaseCenter {
                 }
                 MonitorCenter.INSTANCE.report(report);
             }
+            @Override
+            public void rejected(AbstractBaseEntity task) {
+                logger.error("Saving {} rejected, database executor queue full, data: {}",task.getClass().getSimpleName(), JSON.toJSONString(task));
+            }
         });
+        ExecutorConfig executorConfig = ConfigManager.INSTANCE.getConfig(ExecutorConfig.class);
+        executor.setScheduleMode(executorConfig.getDatabaseScheduleMode());
+        executor.setVirtualThreadConcurrency(executorConfig.getDatabaseVirtualThreadConcurrency());
+        executor.setTurnQuantum(executorConfig.getDatabaseTurnMaxTasks(), executorConfig.getDatabaseTurnMaxTime(), TimeUnit.MILLISECONDS);
+        executor.setCapacity(executorConfig.getDatabaseUserCapacity(), executorConfig.getDatabaseExecutorCapacity(), executorConfig.getDatabaseRejectPolicy());
+        executor.setBlockTimeout(executorConfig.getDatabaseBlockTimeout(), TimeUnit.MILLISECONDS);
+        executor.setWaitStrategy(executorConfig.getDatabaseWaitStrategy(), executorConfig.getDatabaseSpinTries(), executorConfig.getDatabaseYieldTries());
+        if(executorConfig.getDatabaseAdaptiveMaxThreads() > 0){
+            executor.setAdaptiveThreads(executorConfig.getDatabaseAdaptiveMinThreads(), executorConfig.getDatabaseAdaptiveMaxThreads());
+        }
         executor.start();
     }
 
@@ -145,10 +171,21 @@ public class DatabaseCenter {
     }
 
     public void save(Set<AbstractBaseEntity> entities){
-        if(!terminated){
-            for(AbstractBaseEntity entity:entities){
+        for(AbstractBaseEntity entity:entities){
+            if(terminated){
+                lost(entity);
+                continue;
+            }
+            try{
                 executor.add(entity.getKeyID(),entity);
+            } catch (IllegalStateException e){
+                //The executor has been drained and stopped meanwhile.
+                lost(entity);
             }
         }
     }
+
+    private void lost(AbstractBaseEntity entity){
+        logger.error("Saving {} lost, database executor terminated, data: {}",entity.getClass().getSimpleName(), JSON.toJSONString(entity));
+    }
 }
@@ -40,6 +40,8 @@ public class EntityManager {
 
     private MemoryCache memoryCache;
     private RedisCache redisCache;
+    //Owner of the entity free scope the current thread is in, see enterEntityFreeScope.
+    private final ThreadLocal<String> entityFreeScope = new ThreadLocal<>();
 
     private EntityManager(){}
 
@@ -51,6 +53,7 @@ public class EntityManager {
     }
 
     public <T extends AbstractBaseEntity> List<T> selectByKey(long key, Class<T> entityClass) throws Exception{
+        checkEntityAccess();
         List<T> result = ThreadCacheManager.INSTANCE.selectByKey(key,entityClass);
         if(result != null){
             return result;
@@ -103,6 +106,7 @@ public class EntityManager {
      * @throws Exception while exception occurs.
      */
     public <T extends AbstractBaseEntity> List<T> selectCustom(int dbID, String sql, Class<T> entityClass) throws Exception{
+        checkEntityAccess();
         List<T> entities = DatabaseCenter.INSTANCE.selectCustom(dbID, sql,entityClass);
         syncFromCache(entities, entityClass);
         return entities;
@@ -118,6 +122,7 @@ public class EntityManager {
      * @throws Exception while exception occurs.
      */
     public <T extends AbstractBaseEntity> List<T> selectCustom(Bson queryBson, Class<T> entityClass) throws Exception{
+        checkEntityAccess();
         List<T> entities = DatabaseCenter.INSTANCE.selectCustom(0, queryBson, entityClass);
         syncFromCache(entities, entityClass);
         return entities;
@@ -128,6 +133,7 @@ public class EntityManager {
      * If a keyID is newly created or got by selectByCustom, this method must be called before save.
      */
     public <T extends AbstractBaseEntity> void buildCache(long key,Class<T> entityClass) throws Exception {
+        checkEntityAccess();
         List<T> entities;
         AnnTable annTable = entityClass.getAnnotation(AnnTable.class);
         if(annTable.cacheType() == Constants.CacheType.MEMORY) {
@@ -173,11 +179,36 @@ public class EntityManager {
         ThreadCacheManager.INSTANCE.syncFromCache(entities,entityClass);
     }
 
+    /**
+     * Forbid entities in the current thread until {@link #exitEntityFreeScope()}, for code which must never block on
+     * caches or databases, like inline message handlers running on the network threads.
+     * @param owner What runs in the scope, shown in the exception of a misuse.
+     */
+    public void enterEntityFreeScope(String owner){
+        entityFreeScope.set(owner);
+    }
+
+    public void exitEntityFreeScope(){
+        entityFreeScope.remove();
+    }
+
+    /**
+     * Check entities are allowed in the current thread.
+     * @throws IllegalStateException if the current thread is in an entity free scope.
+     */
+    public void checkEntityAccess(){
+        String owner = entityFreeScope.get();
+        if(owner != null){
+            throw new IllegalStateException(String.format("Entities are not allowed in %s!", owner));
+        }
+    }
+
     public Set<Integer> getAllMySqlDbID(){
         return DatabaseCenter.INSTANCE.getAllMySqlDbID();
     }
 
     public void saveWithoutCache(Set<AbstractBaseEntity> entities) {
+        checkEntityAccess();
         Set<AbstractBaseEntity> entitiesToSave = new HashSet<>();
         for(AbstractBaseEntity entity:entities){
             if(entity.getAction() == null){
@@ -193,6 +224,7 @@ public class EntityManager {
     }
 
     public boolean save(Set<AbstractBaseEntity> entities) {
+        checkEntityAccess();
         List<AbstractBaseEntity> entitiesInRedis = new ArrayList<>();
         List<AbstractBaseEntity> entitiesInMemory = new ArrayList<>();
         Set<AbstractBaseEntity> entitiesToSave = new HashSet<>();
@@ -15,12 +15,18 @@
  */
 package pers.winter.framework.entity;
 
+import pers.winter.framework.cache.thread.ThreadCache;
 import pers.winter.framework.cache.thread.ThreadCacheManager;
 import pers.winter.framework.db.AbstractBaseEntity;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 public abstract class Transaction implements Runnable{
+    //Resume executor of the asynchronous transaction whose process is running on the current thread.
+    private static final ThreadLocal<Executor> RESUME_EXECUTOR = new ThreadLocal<>();
     private final String name;
     private int retryCount;
     public Transaction(String name,int retryCount){
@@ -41,6 +47,118 @@ public abstract class Transaction implements Runnable{
     }
     protected abstract void process();
     protected abstract void failed();
+
+    /**
+     * Called after each commit, for metrics.
+     * @param round 0 for the first commit, or the count of retries so far.
+     * @param success Whether the commit succeeded.
+     * @param nanos Time the commit took in nanoseconds.
+     */
+    protected void committed(int round, boolean success, long nanos){}
+
+    /**
+     * Process which may complete asynchronously, only used by {@link #runAsync(Executor)}.
+     * The transaction is committed when the returned stage completes, normally or exceptionally, and a failed commit
+     * runs the process again. Entities changed in the callbacks of the stage are only committed if the callbacks run
+     * with {@link #continuationExecutor()}. By default it is {@link #process()}.
+     * @return A stage completed when the process is done, or null if it is already done.
+     */
+    protected CompletionStage<?> processAsync(){
+        process();
+        return null;
+    }
+
+    /**
+     * Run the transaction like {@link #run()}, but without blocking the thread while {@link #processAsync()} waits.
+     * The commit, the retries and {@link #failed()} run with the resume executor after the stage of the process completes,
+     * never in the thread completing the stage, which is usually an IO thread of a client that a blocking commit would stall.
+     * @param resumeExecutor Executor of the continuations, such as {@link pers.winter.framework.threadpool.fair.FairPoolExecutor#resumeExecutor()}.
+     * @return A future completed when the transaction is committed or failed.
+     */
+    public CompletableFuture<Void> runAsync(Executor resumeExecutor){
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        ThreadCacheManager.INSTANCE.initThread();
+        try{
+            runRounds(0, false, completion, resumeExecutor);
+        } finally {
+            ThreadCacheManager.INSTANCE.removeThread();
+        }
+        return completion;
+    }
+
+    private void runRounds(int round, boolean processed, CompletableFuture<Void> completion, Executor resumeExecutor){
+        while(true){
+            if(!processed){
+                CompletionStage<?> stage;
+                Executor previousResume = RESUME_EXECUTOR.get();
+                RESUME_EXECUTOR.set(resumeExecutor);
+                try{
+                    stage = processAsync();
+                } finally {
+                    RESUME_EXECUTOR.set(previousResume);
+                }
+                if(stage instanceof CompletableFuture && ((CompletableFuture<?>) stage).isDone()){
+                    //Completed already, commit in the current thread.
+                    stage = null;
+                }
+                if(stage != null){
+                    ThreadCache threadCache = ThreadCacheManager.INSTANCE.detachThread();
+                    int pendingRound = round;
+                    stage.whenCompleteAsync((result, cause) -> {
+                        ThreadCache previous = ThreadCacheManager.INSTANCE.attachThread(threadCache);
+                        try{
+                            runRounds(pendingRound, true, completion, resumeExecutor);
+                        } catch (Throwable e){
+                            completion.completeExceptionally(e);
+                        } finally {
+                            ThreadCacheManager.INSTANCE.attachThread(previous);
+                        }
+                    }, resumeExecutor);
+                    return;
+                }
+            }
+            processed = false;
+            long commitStart = System.nanoTime();
+            boolean result = commit();
+            committed(round, result, System.nanoTime() - commitStart);
+            ThreadCacheManager.INSTANCE.clearCachedEntities();
+            if(result){
+                Runnable successListener = ThreadCacheManager.INSTANCE.getCommitListener();
+                if(successListener != null){
+                    successListener.run();
+                }
+                completion.complete(null);
+                return;
+            }
+            if(round++ >= retryCount){
+                failed();
+                completion.complete(null);
+                return;
+            }
+        }
+    }
+
+    /**
+     * An executor running callbacks with the resume executor of the current transaction and its thread cache,
+     * so that entities changed in the callbacks of an asynchronous process are committed with the transaction.
+     * Must be called in {@link #processAsync()}, and the callbacks must complete before the stage of the process.
+     * @throws IllegalStateException Throws if not called in the process of an asynchronous transaction
+     */
+    public static Executor continuationExecutor() throws IllegalStateException {
+        Executor resumeExecutor = RESUME_EXECUTOR.get();
+        if(resumeExecutor == null){
+            throw new IllegalStateException("Continuation executor is only available in processAsync()!");
+        }
+        ThreadCache threadCache = ThreadCacheManager.INSTANCE.getThreadCache();
+        return command -> resumeExecutor.execute(() -> {
+            ThreadCache previous = ThreadCacheManager.INSTANCE.attachThread(threadCache);
+            try{
+                command.run();
+            } finally {
+                ThreadCacheManager.INSTANCE.attachThread(previous);
+            }
+        });
+    }
     @Override
     public void run() {
         ThreadCacheManager.INSTANCE.initThread();
@@ -49,7 +167,9 @@ public abstract class Transaction implements Runnable{
             int round = 0;
             do{
                 process();
+                long commitStart = System.nanoTime();
                 result = commit();
+                committed(round, result, System.nanoTime() - commitStart);
                 ThreadCacheManager.INSTANCE.clearCachedEntities();
             } while (!result && round++ < retryCount);
             if(!result){
@@ -15,11 +15,15 @@
  */
 package pers.winter.framework.message;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.annotation.JSONField;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import pers.winter.example.session.UserSession;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * Parent class for all messages
  * @author Winter
@@ -27,6 +31,11 @@ import pers.winter.example.session.UserSession;
 public abstract class AbstractBaseMessage {
     private transient ChannelHandlerContext context;
     private transient UserSession session;
+    //Id of the message in JsonMessageDictionary, set by the decoder, 0 if unknown.
+    private transient int messageID;
+    //System.nanoTime() when the message is decoded and put into the message executor, for metrics, 0 if unknown.
+    private transient long decodeNanos;
+    private transient long enqueueNanos;
     public void setContext(ChannelHandlerContext context){
         this.context = context;
     }
@@ -41,5 +50,36 @@ public abstract class AbstractBaseMessage {
     public Channel getChannel(){
         return context!=null?context.channel():null;
     }
+    @JSONField(deserialize = false)
+    public void setMessageID(int messageID){
+        this.messageID = messageID;
+    }
+    @JSONField(serialize = false)
+    public int getMessageID(){
+        return messageID;
+    }
+    @JSONField(deserialize = false)
+    public void setDecodeNanos(long decodeNanos){
+        this.decodeNanos = decodeNanos;
+    }
+    @JSONField(serialize = false)
+    public long getDecodeNanos(){
+        return decodeNanos;
+    }
+    @JSONField(deserialize = false)
+    public void setEnqueueNanos(long enqueueNanos){
+        this.enqueueNanos = enqueueNanos;
+    }
+    @JSONField(serialize = false)
+    public long getEnqueueNanos(){
+        return enqueueNanos;
+    }
     public abstract byte[] serialized();
+    /**
+     * Write the message as UTF-8 JSON to the stream, the encoder writes the network buffer with it.
+     * Override it together with {@link #serialized()} if the message is serialized differently.
+     */
+    public void serializeTo(OutputStream out) throws IOException {
+        JSON.writeJSONString(out, this);
+    }
 }
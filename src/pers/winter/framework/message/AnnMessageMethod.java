@@ -24,4 +24,68 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface AnnMessageMethod {
     int retryCount();
+
+    /**
+     * Time to live of the message in milliseconds, counted from the time it is put into the message executor.
+     * A message still waiting in the executor after it is skipped, useful for messages soon superseded by newer ones,
+     * like movements and heartbeats. 0 means never expiring.
+     */
+    long ttl() default 0;
+
+    /**
+     * Priority lane of the message in the message executor, only works while the priority lanes are enabled in executor.properties.
+     * Use {@link Priority#HIGH} for cheap control messages like handshake and login, so they jump ahead of bulk gameplay messages.
+     */
+    Priority priority() default Priority.NORMAL;
+
+    /**
+     * Only handle the latest one of the messages of this type queued one after another for the same user, the older ones are dropped.
+     * Useful for messages carrying a full state, like positions and settings, where only the newest one matters.
+     * A handler with a {@code List} parameter receives a list of the latest message only.
+     */
+    boolean latestOnly() default false;
+
+    /**
+     * Run the handler directly on the network thread which receives the message, skipping the message executor.
+     * Only for trivial handlers which never block and never use entities, like echoes and pings, an entity access throws.
+     * An inline message may overtake the messages of the same user still waiting in the executor, and it is never retried.
+     */
+    boolean inline() default false;
+
+    /**
+     * Max messages of this type per second for each connection, checked on receiving before the message is put into the executor.
+     * 0 means unlimited.
+     */
+    int rateLimit() default 0;
+
+    /**
+     * Messages of this type allowed at once for each connection, on top of {@link #rateLimit()}. 0 means the same as the rate limit.
+     */
+    int rateBurst() default 0;
+
+    /**
+     * What to do with a message over the rate limit.
+     */
+    RateLimitAction rateLimitAction() default RateLimitAction.DROP;
+
+    /**
+     * Priority lanes of messages, from the highest to the lowest.
+     */
+    enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    /**
+     * What to do with a message over the rate limit, the message is never handled.
+     */
+    enum RateLimitAction {
+        /** Drop the message silently. */
+        DROP,
+        /** Drop the message and reply an {@link pers.winter.message.json.ActionFail} to the client. */
+        FAIL,
+        /** Drop the message and close the connection. */
+        DISCONNECT
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.message;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Generated invoker of an asynchronous message handler method, which returns a {@link java.util.concurrent.CompletionStage}
+ * or a {@link reactor.core.publisher.Mono}, see {@link IMessageInvoker}.
+ * @author Winter
+ */
+@FunctionalInterface
+public interface IAsyncMessageInvoker {
+    /**
+     * Handle the message.
+     * @param argument The message, or the list of messages for a batched handler, must be of the parameter type of the handler method.
+     * @return The stage or the mono returned by the handler method.
+     */
+    Object invoke(Object argument) throws Throwable;
+
+    /**
+     * Generate an invoker calling an asynchronous handler method on the service.
+     * @param service The service object.
+     * @param method A public method of the service, with a single parameter of a message class or a list of messages.
+     */
+    static IAsyncMessageInvoker create(Object service, Method method) throws Exception {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle methodHandle = lookup.unreflect(method);
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke",
+                MethodType.methodType(IAsyncMessageInvoker.class, service.getClass()),
+                MethodType.methodType(Object.class, Object.class),
+                methodHandle,
+                MethodType.methodType(method.getReturnType(), method.getParameterTypes()[0]));
+        try{
+            return (IAsyncMessageInvoker) callSite.getTarget().invoke(service);
+        } catch (Throwable e){
+            throw new IllegalStateException(String.format("Create invoker for %s failed!", method), e);
+        }
+    }
+}
@@ -17,17 +17,23 @@ package pers.winter.framework.message;
 
 import com.alibaba.fastjson.JSON;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.Channel;
 import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pers.winter.example.Constants;
 import pers.winter.example.session.SessionContainer;
 import pers.winter.framework.config.ApplicationConfig;
 import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.config.ExecutorConfig;
 import pers.winter.framework.config.MonitorConfig;
+import pers.winter.framework.entity.EntityManager;
 import pers.winter.framework.entity.Transaction;
 import pers.winter.framework.monitor.MonitorCenter;
+import pers.winter.framework.server.codec.JsonMessageDictionary;
 import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+import pers.winter.framework.threadpool.fair.FairPoolStatistics;
 import pers.winter.framework.timer.TimerTaskManager;
 import pers.winter.message.json.ActionFail;
 import pers.winter.framework.threadpool.IExecutorHandler;
@@ -37,18 +43,22 @@ import pers.winter.message.multiroles.login.Handshake;
 import pers.winter.monitor.ExecutorError;
 import pers.winter.monitor.MessageProcessSlow;
 import pers.winter.monitor.MessageTransactionFail;
+import pers.winter.monitor.MessageTypeMetrics;
 import pers.winter.monitor.ExecutorQueueOverflow;
+import reactor.core.publisher.Mono;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -58,13 +68,23 @@ import java.util.concurrent.TimeUnit;
 public class MessageCenter {
     public static final MessageCenter INSTANCE = new MessageCenter();
     private static final Logger logger = LogManager.getLogger(MessageCenter.class);
+    //Executor name in the error reports of inline handlers.
+    private static final String INLINE_EXECUTOR_NAME = "EventLoop";
+    private static final AttributeKey<Object> ATTRIBUTE_KEY_GUEST_KEY = AttributeKey.valueOf("guestKey");
     private MessageCenter(){}
     private Map<Class<?>, MessageHandler> messageHandlers = new HashMap<>();
+    //Handlers indexed by the message id of JsonMessageDictionary, built once on start.
+    private MessageHandler[] messageHandlerTable = new MessageHandler[0];
     private IExecutorHandler<AbstractBaseMessage> executorHandler;
     private FairPoolExecutor<AbstractBaseMessage> executor;
-    private boolean terminated = false;
-    private ConcurrentHashMap<Thread,MessageTransaction> transactionPool;
+    private volatile boolean terminated = false;
+    private final ThreadLocal<MessageTransaction> transactionPool = ThreadLocal.withInitial(()->new MessageTransaction("MessageExecutor"));
     private TimerTaskManager.RepeatedTimerTask monitorTask;
+    private TimerTaskManager.RepeatedTimerTask metricsTask;
+    private boolean metricsEnabled;
+    private RejectAction rejectAction = RejectAction.FAIL;
+    private GuestKeyMode guestKeyMode = GuestKeyMode.IP;
+    private int guestKeyShards = 1;
 
     /**
      * Scan all classes in the project and init the handler for every message.
@@ -75,49 +95,117 @@ public class MessageCenter {
      */
     public void start() throws Exception {
         initMessageHandler();
-        initTransactionPool();
         initMonitor();
         startExecutor();
     }
 
     /**
      * Terminate the message center, called when terminate the server.
-     * Message center will not receive any new message, but will still complete the messages remains.
+     * Message center will not receive any new message, but will still complete the messages remains with all executor threads,
+     * until the terminate timeout elapses.
      */
     public void terminate() {
         terminated = true;
         monitorTask.cancel();
-        executor.terminate(false);
+        if(metricsTask != null){
+            metricsTask.cancel();
+        }
+        executor.terminate(ConfigManager.INSTANCE.getConfig(ExecutorConfig.class).getMessageTerminateTimeout(), TimeUnit.MILLISECONDS);
+    }
+    /**
+     * Take a snapshot of the message executor metrics, see {@link FairPoolExecutor#getStatistics(boolean)}.
+     */
+    public FairPoolStatistics getExecutorStatistics(boolean reset){
+        return executor.getStatistics(reset);
     }
+
     private void initMessageHandler() throws Exception {
         List<Class<?>> handlerClasses = ClassScanner.getTypesAnnotatedWith(AnnMessageServiceImpl.class);
+        Map<MessageHandler, AnnMessageMethod> rateLimits = new LinkedHashMap<>();
         for(Class<?> handlerClass:handlerClasses){
             Object handler = null;
             for(Method method:handlerClass.getMethods()){
                 if(method.getParameterTypes().length == 1){
-                    Class<?> parameterCls = method.getParameterTypes()[0];
-                    if(AbstractBaseMessage.class.isAssignableFrom(parameterCls) && parameterCls != AbstractBaseMessage.class){
+                    boolean batch = method.getParameterTypes()[0] == List.class;
+                    Class<?> parameterCls = batch ? getListElementClass(method) : method.getParameterTypes()[0];
+                    if(parameterCls != null && AbstractBaseMessage.class.isAssignableFrom(parameterCls) && parameterCls != AbstractBaseMessage.class){
                         if(handler == null){
                             Constructor<?> defaultConstructor = handlerClass.getConstructor();
                             handler = defaultConstructor.newInstance();
                         }
                         int retryCount = 0;
+                        long ttl = 0;
+                        AnnMessageMethod.Priority priority = AnnMessageMethod.Priority.NORMAL;
+                        boolean latestOnly = false;
+                        boolean inline = false;
                         AnnMessageMethod annMethod = method.getAnnotation(AnnMessageMethod.class);
                         if(annMethod != null){
                             retryCount = annMethod.retryCount();
+                            ttl = annMethod.ttl();
+                            priority = annMethod.priority();
+                            latestOnly = annMethod.latestOnly();
+                            inline = annMethod.inline();
+                        }
+                        Class<?> returnCls = method.getReturnType();
+                        IMessageInvoker invoker = null;
+                        IAsyncMessageInvoker asyncInvoker = null;
+                        if(CompletionStage.class.isAssignableFrom(returnCls) || Mono.class.isAssignableFrom(returnCls)){
+                            asyncInvoker = IAsyncMessageInvoker.create(handler, method);
+                        } else {
+                            invoker = IMessageInvoker.create(handler, method);
+                        }
+                        if(inline && (batch || latestOnly || asyncInvoker != null)){
+                            throw new IllegalStateException(String.format("Inline handler %s cannot be batched or asynchronous!", method));
+                        }
+                        MessageHandler messageHandler = new MessageHandler(handler,invoker,asyncInvoker,retryCount,ttl,priority,batch,latestOnly,inline);
+                        messageHandlers.put(parameterCls,messageHandler);
+                        if(annMethod != null && annMethod.rateLimit() > 0){
+                            rateLimits.put(messageHandler, annMethod);
                         }
-                        MethodHandle methodHandle = MethodHandles.publicLookup().unreflect(method);
-                        MethodHandle genericHandle = methodHandle.asType(MethodType.methodType(methodHandle.type().returnType(),List.of(Object.class,AbstractBaseMessage.class)));
-                        genericHandle.bindTo(handler);
-                        messageHandlers.put(parameterCls,new MessageHandler(handler,genericHandle,retryCount));
                     }
                 }
             }
         }
+        int slot = 0;
+        for(Map.Entry<MessageHandler, AnnMessageMethod> entry : rateLimits.entrySet()){
+            AnnMessageMethod annMethod = entry.getValue();
+            int burst = annMethod.rateBurst() > 0 ? annMethod.rateBurst() : annMethod.rateLimit();
+            entry.getKey().setRateLimiter(new MessageRateLimiter(slot++, rateLimits.size(), annMethod.rateLimit(), burst, annMethod.rateLimitAction()));
+        }
+        MessageHandler[] table = new MessageHandler[JsonMessageDictionary.getMaxMessageID() + 1];
+        for(Map.Entry<Class<?>, MessageHandler> entry : messageHandlers.entrySet()){
+            int messageID = JsonMessageDictionary.getMessageIDOrZero(entry.getKey());
+            if(messageID > 0){
+                table[messageID] = entry.getValue();
+            }
+        }
+        messageHandlerTable = table;
     }
-    private void initTransactionPool(){
-        short threadCount = ConfigManager.INSTANCE.getConfig(ApplicationConfig.class).getMessageThreadPoolCount();
-        transactionPool = new ConcurrentHashMap<>(threadCount);
+
+    /**
+     * Element class of a {@code List<SomeMessage>} parameter of a batched handler method, or null if it is not declared.
+     */
+    private static Class<?> getListElementClass(Method method){
+        Type parameterType = method.getGenericParameterTypes()[0];
+        if(parameterType instanceof ParameterizedType){
+            Type elementType = ((ParameterizedType) parameterType).getActualTypeArguments()[0];
+            if(elementType instanceof Class){
+                return (Class<?>) elementType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the handler of a message, by its message id if it is decoded from the network, or by its class.
+     */
+    private MessageHandler getMessageHandler(AbstractBaseMessage message){
+        int messageID = message.getMessageID();
+        MessageHandler[] table = messageHandlerTable;
+        if(messageID > 0 && messageID < table.length && table[messageID] != null){
+            return table[messageID];
+        }
+        return messageHandlers.get(message.getClass());
     }
     private void initMonitor(){
         monitorTask = TimerTaskManager.getInstance().newRepeatedTimeout(new Transaction("MessageCenterMonitor") {
@@ -135,36 +223,151 @@ public class MessageCenter {
             @Override
             protected void failed() {}
         },60,60, TimeUnit.SECONDS,0);
+        MonitorConfig monitorConfig = ConfigManager.INSTANCE.getConfig(MonitorConfig.class);
+        metricsEnabled = monitorConfig.isMessageMetricsEnabled();
+        if(metricsEnabled){
+            int interval = monitorConfig.getMessageMetricsInterval();
+            metricsTask = TimerTaskManager.getInstance().newRepeatedTimeout(new Transaction("MessageMetricsReport") {
+                @Override
+                protected void process() {
+                    reportMetrics();
+                }
+                @Override
+                protected void failed() {}
+            },interval,interval, TimeUnit.SECONDS,0);
+        }
+    }
+
+    /**
+     * Report the metrics of every message class handled since the previous report.
+     */
+    private void reportMetrics(){
+        long now = System.currentTimeMillis();
+        for(Map.Entry<Class<?>, MessageHandler> entry : messageHandlers.entrySet()){
+            MessageTypeMetrics metrics = entry.getValue().getMetrics().snapshot(entry.getKey().getSimpleName());
+            if(metrics != null){
+                metrics.setTime(now);
+                MonitorCenter.INSTANCE.report(metrics);
+            }
+        }
     }
     private void startExecutor(){
         this.executorHandler = new IExecutorHandler<AbstractBaseMessage>() {
             @Override
             public void execute(AbstractBaseMessage task) throws Throwable {
-                MessageHandler messageHandler = messageHandlers.get(task.getClass());
+                //Only the synchronous path, an asynchronous handler resumes in the turn of its producer and cannot be waited for here.
+                MessageHandler messageHandler = getMessageHandler(task);
                 if(messageHandler == null){
                     logger.error("Message handler not found for {}", task.getClass().getSimpleName());
                     return;
                 }
-                MessageTransaction transaction = transactionPool.get(Thread.currentThread());
-                if(transaction == null){
-                    transaction = new MessageTransaction("MessageExecutor");
-                    transactionPool.put(Thread.currentThread(),transaction);
+                if(messageHandler.isAsync()){
+                    throw new UnsupportedOperationException(String.format("Asynchronous handler of %s must be run by executeAsync!", task.getClass().getSimpleName()));
+                }
+                runTransaction(messageHandler, task, null);
+            }
+            @Override
+            public CompletionStage<?> executeAsync(AbstractBaseMessage task) {
+                MessageHandler messageHandler = getMessageHandler(task);
+                if(messageHandler == null){
+                    logger.error("Message handler not found for {}", task.getClass().getSimpleName());
+                    return null;
                 }
-                transaction.message = task;
-                transaction.handler = messageHandler;
-                transaction.setRetryCount(messageHandler.getRetryCount());
-                transaction.run();
+                return runTransaction(messageHandler, task, null);
+            }
+            @Override
+            public Object batchKey(AbstractBaseMessage task) {
+                MessageHandler messageHandler = getMessageHandler(task);
+                return messageHandler != null && (messageHandler.isBatch() || messageHandler.isLatestOnly()) ? messageHandler : null;
+            }
+            @Override
+            public CompletionStage<?> executeBatch(List<AbstractBaseMessage> tasks) {
+                AbstractBaseMessage latest = tasks.get(tasks.size() - 1);
+                MessageHandler messageHandler = getMessageHandler(latest);
+                List<AbstractBaseMessage> messages = null;
+                if(messageHandler.isBatch()){
+                    messages = messageHandler.isLatestOnly() ? List.of(latest) : tasks;
+                }
+                return runTransaction(messageHandler, latest, messages);
             }
             @Override
             public void exceptionCaught(AbstractBaseMessage task, Throwable cause) {
                 logger.error("Execute message {} exception! Data: {}.", task.getClass().getSimpleName(), JSON.toJSONString(task),cause);
             }
+            @Override
+            public void rejected(AbstractBaseMessage task) {
+                logger.debug("Message {} rejected, executor queue full.", task.getClass().getSimpleName());
+                if(task.getChannel() == null || !task.getChannel().isActive()){
+                    return;
+                }
+                if(rejectAction == RejectAction.CLOSE){
+                    task.getChannel().close();
+                } else {
+                    task.getChannel().writeAndFlush(new ActionFail());
+                }
+            }
+            @Override
+            public void onExpired(AbstractBaseMessage task) {
+                logger.debug("Message {} expired in executor queue.", task.getClass().getSimpleName());
+            }
         };
         short threadCount = ConfigManager.INSTANCE.getConfig(ApplicationConfig.class).getMessageThreadPoolCount();
         executor = new FairPoolExecutor<>("MessageExecutor",threadCount,this.executorHandler);
+        ExecutorConfig executorConfig = ConfigManager.INSTANCE.getConfig(ExecutorConfig.class);
+        executor.setScheduleMode(executorConfig.getMessageScheduleMode());
+        executor.setVirtualThreadConcurrency(executorConfig.getMessageVirtualThreadConcurrency());
+        executor.setTurnQuantum(executorConfig.getMessageTurnMaxTasks(), executorConfig.getMessageTurnMaxTime(), TimeUnit.MILLISECONDS);
+        executor.setCapacity(executorConfig.getMessageUserCapacity(), executorConfig.getMessageExecutorCapacity(), executorConfig.getMessageRejectPolicy());
+        executor.setBlockTimeout(executorConfig.getMessageBlockTimeout(), TimeUnit.MILLISECONDS);
+        executor.setWaitStrategy(executorConfig.getMessageWaitStrategy(), executorConfig.getMessageSpinTries(), executorConfig.getMessageYieldTries());
+        if(executorConfig.getMessageAdaptiveMaxThreads() > 0){
+            executor.setAdaptiveThreads(executorConfig.getMessageAdaptiveMinThreads(), executorConfig.getMessageAdaptiveMaxThreads());
+        }
+        if(executorConfig.isMessagePriorityLanes()){
+            executor.setLanes(AnnMessageMethod.Priority.values().length, this::getPriorityLane, executorConfig.getMessageLanePolicy(), executorConfig.getMessageLaneWeights());
+        }
+        rejectAction = executorConfig.getMessageRejectAction();
+        ApplicationConfig applicationConfig = ConfigManager.INSTANCE.getConfig(ApplicationConfig.class);
+        guestKeyMode = applicationConfig.getGuestKeyMode();
+        guestKeyShards = Math.max(applicationConfig.getGuestKeyShards(), 1);
         executor.start();
     }
 
+    /**
+     * Run the transaction of a message, or of a batch of messages for a batched handler.
+     * A synchronous handler runs in the pooled transaction of the thread, while an asynchronous one gets its own transaction,
+     * which lives until the stage of the handler completes.
+     * @return A future completed after the transaction of an asynchronous handler, or null for a synchronous handler.
+     */
+    private CompletionStage<?> runTransaction(MessageHandler messageHandler, AbstractBaseMessage message, List<AbstractBaseMessage> messages){
+        MessageTransaction transaction = messageHandler.isAsync() ? new MessageTransaction("MessageExecutor") : transactionPool.get();
+        transaction.message = message;
+        transaction.messages = messages;
+        transaction.handler = messageHandler;
+        transaction.metrics = null;
+        if(metricsEnabled){
+            transaction.metrics = messageHandler.getMetrics();
+            long now = System.nanoTime();
+            if(messages == null){
+                transaction.metrics.recordDequeue(message, now);
+            } else {
+                for(int i = 0;i < messages.size();i++){
+                    transaction.metrics.recordDequeue(messages.get(i), now);
+                }
+            }
+        }
+        transaction.setRetryCount(messageHandler.getRetryCount());
+        if(messageHandler.isAsync()){
+            return transaction.runAsync(FairPoolExecutor.resumeExecutor());
+        }
+        try{
+            transaction.run();
+        } finally {
+            transaction.messages = null;
+        }
+        return null;
+    }
+
     /**
      * Receive a message, put it into the executor
      * @param message
@@ -172,8 +375,7 @@ public class MessageCenter {
     public void receiveMessage(AbstractBaseMessage message){
         if(!terminated){
             if(message.getClass() == Handshake.class){
-                InetSocketAddress address = (InetSocketAddress) message.getChannel().remoteAddress();
-                executor.add(address.getAddress().getHostAddress(),message);
+                addToExecutor(getGuestKey(message.getChannel()),message);
             } else {
                 Attribute<Boolean> verified = message.getChannel().attr(Constants.ATTRIBUTE_KEY_VERIFIED);
                 if(verified.get() == null){
@@ -186,44 +388,215 @@ public class MessageCenter {
                 Attribute<Long> attrUid = message.getChannel().attr(Constants.ATTRIBUTE_KEY_USER_ID);
                 if(attrUid.get() != null){
                     message.setSession(SessionContainer.getInstance().getSession(attrUid.get()));
-                    executor.add(attrUid.get(),message);
+                    addToExecutor(attrUid.get(),message);
                 } else {
-                    InetSocketAddress address = (InetSocketAddress) message.getChannel().remoteAddress();
-                    executor.add(address.getAddress().getHostAddress(),message);
+                    addToExecutor(getGuestKey(message.getChannel()),message);
                 }
             }
         }
     }
 
+    /**
+     * Producer key in the message executor of a connection not logged in yet, see {@link GuestKeyMode}.
+     * The key is computed once and kept on the channel.
+     */
+    private Object getGuestKey(Channel channel){
+        Attribute<Object> attrGuestKey = channel.attr(ATTRIBUTE_KEY_GUEST_KEY);
+        Object key = attrGuestKey.get();
+        if(key == null){
+            SocketAddress remoteAddress = channel.remoteAddress();
+            //Only in-process connections, like the replay of captured traffic, have no IP.
+            String ip = remoteAddress instanceof InetSocketAddress ? ((InetSocketAddress) remoteAddress).getAddress().getHostAddress() : String.valueOf(remoteAddress);
+            switch (guestKeyMode){
+                case CHANNEL:
+                    key = channel.id();
+                    break;
+                case HYBRID:
+                    key = ip + "#" + Math.floorMod(channel.id().hashCode(), guestKeyShards);
+                    break;
+                default:
+                    key = ip;
+                    break;
+            }
+            attrGuestKey.set(key);
+        }
+        return key;
+    }
+
+    private int getPriorityLane(AbstractBaseMessage message){
+        MessageHandler messageHandler = getMessageHandler(message);
+        return messageHandler == null ? AnnMessageMethod.Priority.NORMAL.ordinal() : messageHandler.getPriority().ordinal();
+    }
+
+    private void addToExecutor(Object key, AbstractBaseMessage message){
+        MessageHandler messageHandler = getMessageHandler(message);
+        if(messageHandler != null && messageHandler.getRateLimiter() != null && message.getChannel() != null
+                && !messageHandler.getRateLimiter().tryAcquire(message.getChannel())){
+            rateLimited(messageHandler, message);
+            return;
+        }
+        if(messageHandler != null && messageHandler.isInline()){
+            handleInline(messageHandler, message);
+            return;
+        }
+        if(metricsEnabled && messageHandler != null){
+            messageHandler.getMetrics().recordEnqueue(message, System.nanoTime());
+        }
+        long ttl = messageHandler == null ? 0 : messageHandler.getTtl();
+        try{
+            executor.add(key, message, ttl, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e){
+            //The message center is terminating, and the message arrived after the executor closed its intake.
+            logger.debug("Message {} dropped, executor is terminated.", message.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Deal with a message over the rate limit of its type, see {@link AnnMessageMethod#rateLimitAction()}.
+     */
+    private void rateLimited(MessageHandler messageHandler, AbstractBaseMessage message){
+        logger.debug("Message {} over the rate limit, action: {}.", message.getClass().getSimpleName(), messageHandler.getRateLimiter().getAction());
+        if(metricsEnabled){
+            messageHandler.getMetrics().recordRateLimited();
+        }
+        switch (messageHandler.getRateLimiter().getAction()){
+            case FAIL:
+                message.getChannel().writeAndFlush(new ActionFail());
+                break;
+            case DISCONNECT:
+                message.getChannel().close();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Run an inline handler in the current network thread, with entities forbidden, see {@link AnnMessageMethod#inline()}.
+     */
+    private void handleInline(MessageHandler messageHandler, AbstractBaseMessage message){
+        EntityManager.INSTANCE.enterEntityFreeScope("inline handler of " + message.getClass().getSimpleName());
+        long st = metricsEnabled ? System.nanoTime() : 0;
+        try{
+            messageHandler.getInvoker().invoke(message);
+        } catch (Throwable cause){
+            reportHandlerError(INLINE_EXECUTOR_NAME, message, cause);
+        } finally {
+            EntityManager.INSTANCE.exitEntityFreeScope();
+        }
+        if(metricsEnabled){
+            MessageMetrics metrics = messageHandler.getMetrics();
+            metrics.recordDequeue(message, st);
+            metrics.recordHandler(System.nanoTime() - st);
+        }
+    }
+
+    private static void reportHandlerError(String executorName, AbstractBaseMessage message, Throwable cause){
+        logger.error("Execute message {} exception! Data: {}.", message.getClass().getSimpleName(), JSON.toJSONString(message),cause);
+        ExecutorError report = new ExecutorError();
+        report.setTime(System.currentTimeMillis());
+        report.executorName = executorName;
+        report.taskClass = message.getClass().getSimpleName();
+        report.exceptionClass = cause.getClass().getName();
+        report.exceptionMessage = cause.getMessage();
+        if(cause.getStackTrace() != null){
+            StringBuilder stackTraceBuilder = new StringBuilder();
+            for(int i = 0;i<cause.getStackTrace().length;i++){
+                stackTraceBuilder.append(cause.getStackTrace()[i]);
+                stackTraceBuilder.append("\n");
+            }
+            report.exceptionStackTrace = stackTraceBuilder.toString();
+        }
+        MonitorCenter.INSTANCE.report(report);
+    }
+
+    /**
+     * How the messages of connections not logged in yet, like handshakes, are keyed in the message executor.
+     * Messages of the same key run one by one, so the key decides both the parallelism and the share of an IP.
+     */
+    public enum GuestKeyMode {
+        /** All connections of an IP share one queue, players behind a NAT wait for each other. */
+        IP,
+        /** Each connection has its own queue, an IP can take as many queues as connections. */
+        CHANNEL,
+        /** Connections of an IP are spread over at most guestKeyShards queues by channel id. */
+        HYBRID
+    }
+
+    /**
+     * What to do with the connection when its message is rejected because the message executor is full.
+     */
+    public enum RejectAction {
+        /** Reply an {@link ActionFail} to the client. */
+        FAIL,
+        /** Close the connection. */
+        CLOSE
+    }
+
     private static class MessageTransaction extends Transaction{
+        //The message to handle, or the latest one of the batch.
         private AbstractBaseMessage message;
+        //All messages of the batch, only for a batched handler.
+        private List<AbstractBaseMessage> messages;
         private MessageHandler handler;
+        //Metrics of the message class, null if disabled.
+        private MessageMetrics metrics;
         public MessageTransaction(String name) {
             super(name);
         }
         @Override
         protected void process() {
             long st = System.currentTimeMillis();
+            long startNanos = metrics != null ? System.nanoTime() : 0;
             try{
-                handler.getMethodHandle().invokeExact(handler.getService(),message);
+                handler.getInvoker().invoke(messages != null ? messages : message);
             } catch (Throwable cause){
-                logger.error("Execute message {} exception! Data: {}.", message.getClass().getSimpleName(), JSON.toJSONString(message),cause);
-                ExecutorError report = new ExecutorError();
-                report.setTime(System.currentTimeMillis());
-                report.executorName = MessageCenter.INSTANCE.executor.getName();
-                report.taskClass = message.getClass().getSimpleName();
-                report.exceptionClass = cause.getClass().getName();
-                report.exceptionMessage = cause.getMessage();
-                if(cause.getStackTrace() != null){
-                    StringBuilder stackTraceBuilder = new StringBuilder();
-                    for(int i = 0;i<cause.getStackTrace().length;i++){
-                        stackTraceBuilder.append(cause.getStackTrace()[i]);
-                        stackTraceBuilder.append("\n");
-                    }
-                    report.exceptionStackTrace = stackTraceBuilder.toString();
+                reportError(cause);
+            }
+            if(metrics != null){
+                metrics.recordHandler(System.nanoTime() - startNanos);
+            }
+            reportSlow(st);
+        }
+        @Override
+        protected void committed(int round, boolean success, long nanos) {
+            if(metrics != null){
+                metrics.recordCommit(round, nanos);
+            }
+        }
+        @Override
+        protected CompletionStage<?> processAsync() {
+            long st = System.currentTimeMillis();
+            long startNanos = metrics != null ? System.nanoTime() : 0;
+            Object result;
+            try{
+                result = handler.getAsyncInvoker().invoke(messages != null ? messages : message);
+            } catch (Throwable cause){
+                reportError(cause);
+                reportSlow(st);
+                return null;
+            } finally {
+                //Only the time on the executor thread, the wait for the stage is not counted.
+                if(metrics != null){
+                    metrics.recordHandler(System.nanoTime() - startNanos);
                 }
-                MonitorCenter.INSTANCE.report(report);
             }
+            CompletionStage<?> stage = result instanceof Mono ? ((Mono<?>) result).toFuture() : (CompletionStage<?>) result;
+            if(stage == null){
+                reportSlow(st);
+                return null;
+            }
+            return stage.whenComplete((value, cause) -> {
+                if(cause != null){
+                    reportError(cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause);
+                }
+                reportSlow(st);
+            });
+        }
+        private void reportError(Throwable cause){
+            reportHandlerError(MessageCenter.INSTANCE.executor.getName(), message, cause);
+        }
+        private void reportSlow(long st){
             long duration = System.currentTimeMillis() - st;
             if(duration > ConfigManager.INSTANCE.getConfig(MonitorConfig.class).getMessageProcessSlowThreshold()){
                 MessageProcessSlow messageProcessSlow = new MessageProcessSlow();
@@ -235,6 +608,9 @@ public class MessageCenter {
         }
         @Override
         protected void failed() {
+            if(metrics != null){
+                metrics.recordFailure();
+            }
             if(message.getChannel() != null && message.getChannel().isActive()){
                 message.getChannel().writeAndFlush(new ActionFail());
             }
@@ -15,27 +15,74 @@
  */
 package pers.winter.framework.message;
 
-import java.lang.invoke.MethodHandle;
-
 /**
  * Message handler for a message.
- * getMethodHandle().invoke(getService(), message) will be called when the server receives a message.
+ * getInvoker().invoke(message) will be called when the server receives a message.
  * @author Winter
  */
 public class MessageHandler {
     private final Object service;
-    private final MethodHandle methodHandle;
+    private final IMessageInvoker invoker;
+    private final IAsyncMessageInvoker asyncInvoker;
     private final int retryCount;
-    public MessageHandler(Object service, MethodHandle methodHandle, int retryCount){
+    private final long ttl;
+    private final AnnMessageMethod.Priority priority;
+    private final boolean batch;
+    private final boolean latestOnly;
+    private final boolean inline;
+    private MessageRateLimiter rateLimiter;
+    private final MessageMetrics metrics = new MessageMetrics();
+    public MessageHandler(Object service, IMessageInvoker invoker, IAsyncMessageInvoker asyncInvoker, int retryCount, long ttl,
+                          AnnMessageMethod.Priority priority, boolean batch, boolean latestOnly, boolean inline){
         this.service = service;
-        this.methodHandle = methodHandle;
+        this.invoker = invoker;
+        this.asyncInvoker = asyncInvoker;
         this.retryCount = retryCount;
+        this.ttl = ttl;
+        this.priority = priority;
+        this.batch = batch;
+        this.latestOnly = latestOnly;
+        this.inline = inline;
     }
     public Object getService(){
         return service;
     }
-    public MethodHandle getMethodHandle(){
-        return methodHandle;
+    public IMessageInvoker getInvoker(){
+        return invoker;
+    }
+    /**
+     * Invoker of an asynchronous handler method, null if the handler method returns void.
+     */
+    public IAsyncMessageInvoker getAsyncInvoker(){
+        return asyncInvoker;
     }
+    /**
+     * Whether the handler method returns a stage or a mono, the following messages of the user wait until it completes,
+     * without blocking the executor thread.
+     */
+    public boolean isAsync(){return asyncInvoker != null;}
     public int getRetryCount(){return retryCount;}
+    /**
+     * Time to live of the message in milliseconds, see {@link AnnMessageMethod#ttl()}.
+     */
+    public long getTtl(){return ttl;}
+    public AnnMessageMethod.Priority getPriority(){return priority;}
+    /**
+     * Whether the handler method takes a list of messages, queued messages of the same type are coalesced into one call.
+     */
+    public boolean isBatch(){return batch;}
+    /**
+     * Whether only the latest of the coalesced messages is handled, see {@link AnnMessageMethod#latestOnly()}.
+     */
+    public boolean isLatestOnly(){return latestOnly;}
+    /**
+     * Whether the handler runs on the network thread, see {@link AnnMessageMethod#inline()}.
+     */
+    public boolean isInline(){return inline;}
+    MessageMetrics getMetrics(){return metrics;}
+    /**
+     * Rate limiter of the message type, null if unlimited, see {@link AnnMessageMethod#rateLimit()}.
+     */
+    MessageRateLimiter getRateLimiter(){return rateLimiter;}
+    void setRateLimiter(MessageRateLimiter rateLimiter){this.rateLimiter = rateLimiter;}
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.message;
+
+import pers.winter.framework.monitor.LatencyHistogram;
+import pers.winter.monitor.MessageTypeMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a message class, from the network thread decoding the message to the commit of its transaction.
+ * Recording is lock-free, so it is done on the hot path by the network threads and the executor threads.
+ * @author Winter
+ */
+class MessageMetrics {
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LatencyHistogram decodeToEnqueue = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
+    private final LatencyHistogram commitTime = new LatencyHistogram();
+
+    /**
+     * Record a message put into the executor, and stamp it for the queue wait.
+     */
+    void recordEnqueue(AbstractBaseMessage message, long now){
+        if(message.getDecodeNanos() != 0){
+            decodeToEnqueue.record(now - message.getDecodeNanos());
+        }
+        message.setEnqueueNanos(now);
+    }
+
+    /**
+     * Record a message taken by its transaction.
+     */
+    void recordDequeue(AbstractBaseMessage message, long now){
+        handled.increment();
+        if(message.getEnqueueNanos() != 0){
+            queueWait.record(now - message.getEnqueueNanos());
+        }
+    }
+
+    void recordHandler(long nanos){
+        handlerTime.record(nanos);
+    }
+
+    /**
+     * Record a commit of the transaction.
+     * @param round 0 for the first commit, or the count of retries so far.
+     */
+    void recordCommit(int round, long nanos){
+        commitTime.record(nanos);
+        if(round > 0){
+            retries.increment();
+        }
+    }
+
+    void recordFailure(){
+        failures.increment();
+    }
+
+    void recordRateLimited(){
+        rateLimited.increment();
+    }
+
+    /**
+     * Take a snapshot since the previous one.
+     * @return The monitor bean, or null if no message was handled.
+     */
+    MessageTypeMetrics snapshot(String msgClass){
+        long handledNum = handled.sumThenReset();
+        LatencyHistogram.Snapshot decodeToEnqueueSnapshot = decodeToEnqueue.snapshot(true);
+        LatencyHistogram.Snapshot queueWaitSnapshot = queueWait.snapshot(true);
+        LatencyHistogram.Snapshot handlerSnapshot = handlerTime.snapshot(true);
+        LatencyHistogram.Snapshot commitSnapshot = commitTime.snapshot(true);
+        long retryNum = retries.sumThenReset();
+        long failNum = failures.sumThenReset();
+        long rateLimitedNum = rateLimited.sumThenReset();
+        if(handledNum == 0 && handlerSnapshot.getCount() == 0 && rateLimitedNum == 0){
+            return null;
+        }
+        MessageTypeMetrics metrics = new MessageTypeMetrics();
+        metrics.msgClass = msgClass;
+        metrics.handledNum = handledNum;
+        metrics.retryNum = retryNum;
+        metrics.failNum = failNum;
+        metrics.rateLimitedNum = rateLimitedNum;
+        metrics.decodeToEnqueueP99Us = TimeUnit.NANOSECONDS.toMicros(decodeToEnqueueSnapshot.getValueAtPercentile(99));
+        metrics.queueWaitMeanUs = queueWaitSnapshot.getMean() / 1000;
+        metrics.queueWaitP99Us = TimeUnit.NANOSECONDS.toMicros(queueWaitSnapshot.getValueAtPercentile(99));
+        metrics.handlerMeanUs = handlerSnapshot.getMean() / 1000;
+        metrics.handlerP99Us = TimeUnit.NANOSECONDS.toMicros(handlerSnapshot.getValueAtPercentile(99));
+        metrics.handlerTotalMs = Math.round(handlerSnapshot.getMean() * handlerSnapshot.getCount() / 1_000_000);
+        metrics.commitMeanUs = commitSnapshot.getMean() / 1000;
+        metrics.commitP99Us = TimeUnit.NANOSECONDS.toMicros(commitSnapshot.getValueAtPercentile(99));
+        return metrics;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.message;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of a message type for each channel, see {@link AnnMessageMethod#rateLimit()}.
+ * The bucket is kept as the theoretical arrival time of the next message (the generic cell rate algorithm), a single long
+ * per message type in an array attached to the channel, so checking a message allocates nothing.
+ * Only called by the event loop of the channel, so the counters need no synchronization.
+ * @author Winter
+ */
+class MessageRateLimiter {
+    private static final AttributeKey<long[]> ATTRIBUTE_KEY_RATE_LIMITS = AttributeKey.valueOf("messageRateLimits");
+    //Index of the limiter in the array of each channel.
+    private final int slot;
+    //Count of limiters, the size of the array of each channel.
+    private final int slotCount;
+    //Time to earn a token.
+    private final long intervalNanos;
+    //How far the arrival time can run ahead of now, that is the burst minus one token.
+    private final long toleranceNanos;
+    private final AnnMessageMethod.RateLimitAction action;
+
+    /**
+     * @param rate Messages per second.
+     * @param burst Messages allowed at once, no less than 1.
+     */
+    MessageRateLimiter(int slot, int slotCount, int rate, int burst, AnnMessageMethod.RateLimitAction action){
+        this.slot = slot;
+        this.slotCount = slotCount;
+        this.intervalNanos = Math.max(TimeUnit.SECONDS.toNanos(1) / rate, 1);
+        this.toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+        this.action = action;
+    }
+
+    /**
+     * Take a token of the channel.
+     * @return false if the channel is over the limit.
+     */
+    boolean tryAcquire(Channel channel){
+        Attribute<long[]> attribute = channel.attr(ATTRIBUTE_KEY_RATE_LIMITS);
+        long[] arrivals = attribute.get();
+        if(arrivals == null){
+            arrivals = new long[slotCount];
+            attribute.set(arrivals);
+        }
+        long now = System.nanoTime();
+        long arrival = arrivals[slot];
+        if(arrival == 0 || arrival - now < 0){
+            arrival = now;
+        }
+        if(arrival - now > toleranceNanos){
+            return false;
+        }
+        arrivals[slot] = arrival + intervalNanos;
+        return true;
+    }
+
+    AnnMessageMethod.RateLimitAction getAction(){
+        return action;
+    }
+}
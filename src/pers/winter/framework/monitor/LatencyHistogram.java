@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.monitor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ * Every power of 2 is split into 16 linear sub-buckets, so a recorded value is kept with a relative error under 1/16.
+ * Recording costs a few instructions and an atomic increment, it can be called on hot paths by any thread.
+ * Values are in nanoseconds.
+ * @author Winter
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.
+     * @param nanos The latency in nanoseconds, negative values are recorded as 0.
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        total.add(nanos);
+        long currentMax = max.get();
+        while(nanos > currentMax && !max.compareAndSet(currentMax, nanos)){
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Take a snapshot of the recorded values.
+     * @param reset {@code true} to clear the histogram after the snapshot, so the next snapshot only covers the new values.
+     *              Values recorded concurrently with a reset may be counted in either snapshot.
+     */
+    public Snapshot snapshot(boolean reset){
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for(int i = 0;i<BUCKET_COUNT;i++){
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += copy[i];
+        }
+        long sum = reset ? total.sumThenReset() : total.sum();
+        long maxValue = reset ? max.getAndSet(0) : max.get();
+        return new Snapshot(copy, count, sum, maxValue);
+    }
+
+    private static int indexOf(long value){
+        if(value < SUB_BUCKET_COUNT){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * The highest value kept in the bucket.
+     */
+    private static long highestValueOf(int index){
+        if(index < SUB_BUCKET_COUNT){
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long lowest = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+        private Snapshot(long[] counts, long count, long sum, long max){
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+        /**
+         * Count of recorded values.
+         */
+        public long getCount(){
+            return count;
+        }
+        /**
+         * Mean of recorded values in nanoseconds.
+         */
+        public double getMean(){
+            return count == 0 ? 0 : (double) sum / count;
+        }
+        /**
+         * Max recorded value in nanoseconds.
+         */
+        public long getMax(){
+            return max;
+        }
+        /**
+         * The value in nanoseconds at the percentile, no less than the real one by at most 1/16.
+         * @param percentile Percentile between 0 and 100, such as 99.9
+         */
+        public long getValueAtPercentile(double percentile){
+            if(count == 0){
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+            rank = Math.max(rank, 1);
+            long seen = 0;
+            for(int i = 0;i<counts.length;i++){
+                seen += counts[i];
+                if(seen >= rank){
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+        @Override
+        public String toString(){
+            return String.format("count=%d, mean=%.1fus, p50=%dus, p99=%dus, p999=%dus, max=%dus", count,
+                    getMean() / 1000, TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99)), TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99.9)),
+                    TimeUnit.NANOSECONDS.toMicros(max));
+        }
+    }
+}
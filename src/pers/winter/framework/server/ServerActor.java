@@ -18,10 +18,13 @@ package pers.winter.framework.server;
 import pers.winter.framework.config.ApplicationConfig;
 import pers.winter.framework.config.ConfigManager;
 import pers.winter.framework.message.MessageCenter;
+import pers.winter.framework.server.capture.TrafficCaptureHandler;
 import pers.winter.framework.server.http.HttpServer;
 import pers.winter.framework.server.socket.SocketServer;
 import pers.winter.framework.server.socket.WebSocketServer;
 
+import java.nio.file.Paths;
+
 public class ServerActor {
     public static final ServerActor INSTANCE = new ServerActor();
     private IServer socketServer;
@@ -30,6 +33,9 @@ public class ServerActor {
     public void start() throws Exception{
         MessageCenter.INSTANCE.start();
         ApplicationConfig appConfig = ConfigManager.INSTANCE.getConfig(ApplicationConfig.class);
+        if(!appConfig.getTrafficCaptureFile().isEmpty()){
+            TrafficCaptureHandler.INSTANCE.start(Paths.get(appConfig.getTrafficCaptureFile()), appConfig.getTrafficCaptureSize() * 1024L * 1024L);
+        }
         if(appConfig.getSocketPort()>0){
             socketServer = new SocketServer();
             socketServer.start(appConfig.getSocketPort());
@@ -55,5 +61,6 @@ public class ServerActor {
         if(httpServer != null){
             httpServer.stop();
         }
+        TrafficCaptureHandler.INSTANCE.stop();
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.server.capture;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only, memory-mapped file of captured inbound message packages, see {@link TrafficCaptureHandler}.
+ * Layout: a header of {@link #MAGIC} and {@link #VERSION}, then the records, each one is
+ * [int length of the rest][long nanos since the capture start][long connection id][long user id, 0 if not logged in][byte type][package bytes].
+ * The file is created with its full capacity, a record length of 0 marks the end.
+ * Network threads append concurrently: each one reserves the space of its record with an atomic add on the write
+ * position and fills it with absolute puts, the length is written last so a record being written reads as the end.
+ * @author Winter
+ */
+public class TrafficCaptureFile {
+    private static final Logger logger = LogManager.getLogger(TrafficCaptureFile.class);
+    static final int MAGIC = 0x57545243;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = Integer.BYTES * 2;
+    /** Length of a record without the package bytes, after the length field. */
+    static final int RECORD_HEADER_LENGTH = Long.BYTES * 3 + Byte.BYTES;
+    /** A message package received. */
+    public static final byte TYPE_DATA = 0;
+    /** The connection closed. */
+    public static final byte TYPE_CLOSE = 1;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos;
+    //Position of the next record, a long so that reservations past the capacity never overflow.
+    private final AtomicLong writePosition = new AtomicLong(HEADER_LENGTH);
+    //Count of appends in progress, close() waits for them before flushing.
+    private final AtomicInteger writers = new AtomicInteger();
+    private final AtomicBoolean fullReported = new AtomicBoolean();
+    private volatile boolean full = false;
+
+    /**
+     * Create the file, an existing file is overwritten.
+     * @param capacity Max size of the file in bytes, up to 2GB.
+     */
+    public TrafficCaptureFile(Path path, long capacity) throws IOException {
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+        this.capacity = buffer.capacity();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(Integer.BYTES, VERSION);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Append a record, called by all network threads.
+     * @param packet The package bytes, its indexes are not changed, null for a record without data.
+     * @return false if the file is full or closed, the record is dropped.
+     */
+    public boolean append(long connectionID, long userID, byte type, ByteBuf packet){
+        writers.incrementAndGet();
+        try{
+            if(full){
+                return false;
+            }
+            int length = packet == null ? 0 : packet.readableBytes();
+            int recordLength = Integer.BYTES + RECORD_HEADER_LENGTH + length;
+            long position = writePosition.getAndAdd(recordLength);
+            //Keep room for the end mark.
+            if(position + recordLength + Integer.BYTES > capacity){
+                full = true;
+                if(fullReported.compareAndSet(false, true)){
+                    logger.warn("Traffic capture file is full, capture stopped.");
+                }
+                return false;
+            }
+            int index = (int) position;
+            buffer.putLong(index + Integer.BYTES, System.nanoTime() - startNanos);
+            buffer.putLong(index + Integer.BYTES + Long.BYTES, connectionID);
+            buffer.putLong(index + Integer.BYTES + Long.BYTES * 2, userID);
+            buffer.put(index + Integer.BYTES + Long.BYTES * 3, type);
+            if(length > 0){
+                packet.getBytes(packet.readerIndex(), buffer.slice(index + Integer.BYTES + RECORD_HEADER_LENGTH, length));
+            }
+            buffer.putInt(index, RECORD_HEADER_LENGTH + length);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Flush the records to the disk and close the file, records appended after are dropped.
+     */
+    public void close() throws IOException {
+        full = true;
+        while(writers.get() > 0){
+            Thread.onSpinWait();
+        }
+        buffer.force();
+        fileChannel.close();
+    }
+
+    /**
+     * Read the records of a capture file in order.
+     */
+    public static Reader read(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            if(buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                throw new IOException("Not a traffic capture file: " + path);
+            }
+            return new Reader(buffer);
+        }
+    }
+
+    /**
+     * Iterate records of a capture file, the fields are of the current record after {@link #next()} returns true.
+     */
+    public static class Reader {
+        private final ByteBuffer buffer;
+        private long nanos;
+        private long connectionID;
+        private long userID;
+        private byte type;
+        private ByteBuffer packet;
+        private Reader(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+        /**
+         * Move to the next record.
+         * @return false if no record is left.
+         */
+        public boolean next(){
+            if(buffer.remaining() < Integer.BYTES){
+                return false;
+            }
+            int length = buffer.getInt();
+            if(length < RECORD_HEADER_LENGTH || length > buffer.remaining()){
+                return false;
+            }
+            nanos = buffer.getLong();
+            connectionID = buffer.getLong();
+            userID = buffer.getLong();
+            type = buffer.get();
+            int packetLength = length - RECORD_HEADER_LENGTH;
+            packet = buffer.slice(buffer.position(), packetLength);
+            buffer.position(buffer.position() + packetLength);
+            return true;
+        }
+        /** Nanoseconds since the capture start. */
+        public long getNanos(){return nanos;}
+        /** Id of the connection in the capture, counted from 1. */
+        public long getConnectionID(){return connectionID;}
+        /** User id of the connection when the record was captured, 0 if not logged in. */
+        public long getUserID(){return userID;}
+        /** {@link #TYPE_DATA} or {@link #TYPE_CLOSE}. */
+        public byte getType(){return type;}
+        /** The package bytes, a read-only view of the file. */
+        public ByteBuffer getPacket(){return packet;}
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.server.capture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.AttributeKey;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pers.winter.example.Constants;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Capture the inbound message packages of the socket and websocket servers into a {@link TrafficCaptureFile}, so the
+ * real message mix can be replayed locally with {@link TrafficReplayer}.
+ * Put after the frame decoder, it records every whole package with the connection and the user, then passes it on unchanged.
+ * Only added to the pipelines while the capture is started, see trafficCaptureFile in application.properties.
+ * @author Winter
+ */
+@ChannelHandler.Sharable
+public class TrafficCaptureHandler extends ChannelInboundHandlerAdapter {
+    public static final TrafficCaptureHandler INSTANCE = new TrafficCaptureHandler();
+    private static final Logger logger = LogManager.getLogger(TrafficCaptureHandler.class);
+    private static final AttributeKey<Long> ATTRIBUTE_KEY_CONNECTION_ID = AttributeKey.valueOf("captureConnectionID");
+    private final AtomicLong connectionSequence = new AtomicLong();
+    private volatile TrafficCaptureFile file;
+    private TrafficCaptureHandler(){}
+
+    /**
+     * Start capturing, must be called before the servers start.
+     * @param capacity Max size of the file in bytes.
+     */
+    public void start(Path path, long capacity) throws IOException {
+        file = new TrafficCaptureFile(path, capacity);
+        logger.info("Traffic capture started, file: {}", path);
+    }
+
+    public boolean isStarted(){
+        return file != null;
+    }
+
+    /**
+     * Stop capturing and close the file.
+     */
+    public void stop(){
+        TrafficCaptureFile captureFile = file;
+        file = null;
+        if(captureFile != null){
+            try{
+                captureFile.close();
+            } catch (IOException e){
+                logger.error("Close traffic capture file failed!", e);
+            }
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        TrafficCaptureFile captureFile = file;
+        if(captureFile != null){
+            ByteBuf packet = null;
+            if(msg instanceof ByteBuf){
+                packet = (ByteBuf) msg;
+            } else if(msg instanceof BinaryWebSocketFrame){
+                packet = ((BinaryWebSocketFrame) msg).content();
+            }
+            if(packet != null){
+                captureFile.append(getConnectionID(ctx.channel()), getUserID(ctx.channel()), TrafficCaptureFile.TYPE_DATA, packet);
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        TrafficCaptureFile captureFile = file;
+        Long connectionID = ctx.channel().attr(ATTRIBUTE_KEY_CONNECTION_ID).get();
+        if(captureFile != null && connectionID != null){
+            captureFile.append(connectionID, getUserID(ctx.channel()), TrafficCaptureFile.TYPE_CLOSE, null);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    private long getConnectionID(Channel channel){
+        Long connectionID = channel.attr(ATTRIBUTE_KEY_CONNECTION_ID).get();
+        if(connectionID == null){
+            connectionID = connectionSequence.incrementAndGet();
+            channel.attr(ATTRIBUTE_KEY_CONNECTION_ID).set(connectionID);
+        }
+        return connectionID;
+    }
+
+    private long getUserID(Channel channel){
+        Long userID = channel.attr(Constants.ATTRIBUTE_KEY_USER_ID).get();
+        return userID == null ? 0 : userID;
+    }
+}
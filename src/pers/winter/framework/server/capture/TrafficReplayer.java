@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.server.capture;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pers.winter.example.Constants;
+import pers.winter.example.session.SessionContainer;
+import pers.winter.framework.message.AbstractBaseMessage;
+import pers.winter.framework.message.MessageCenter;
+import pers.winter.framework.server.codec.JsonEncoder;
+import pers.winter.framework.server.codec.MessageDecoder;
+import pers.winter.framework.server.codec.ProtoEncoder;
+import pers.winter.message.multiroles.login.Handshake;
+import pers.winter.message.multiroles.login.RoleLogin;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replay a {@link TrafficCaptureFile} into {@link MessageCenter#receiveMessage(AbstractBaseMessage)}, for benchmarks with the real message mix.
+ * Every captured connection is played by a stand-in client over the in-process local transport of Netty, to a local server
+ * with the same decoders and encoders as the socket server, so messages are decoded, dispatched and answered like in production.
+ * Responses are discarded. The message center must be started before.
+ * Local connections have no IP, so guest messages are keyed by connection whatever the guest key mode is.
+ * The handshake signatures in a capture expire, so a connection that logged in during the capture is replayed as logged in
+ * from its first package: it is verified and bound to the session of the captured user id, and its captured
+ * {@link Handshake} and {@link RoleLogin} messages are skipped.
+ * @author Winter
+ */
+public class TrafficReplayer {
+    private static final Logger logger = LogManager.getLogger(TrafficReplayer.class);
+    private static final DiscardHandler DISCARD_HANDLER = new DiscardHandler();
+    private final Path path;
+    private final double speed;
+
+    /**
+     * @param speed 1 to replay at the captured pace, 2 twice as fast and so on, 0 as fast as possible.
+     */
+    public TrafficReplayer(Path path, double speed){
+        this.path = path;
+        this.speed = speed;
+    }
+
+    /**
+     * Replay the whole file, return after all packages are written.
+     * The messages may still be waiting in the message executor, terminate the message center to wait for them.
+     * @return Count of packages replayed.
+     */
+    public long replay() throws IOException, InterruptedException {
+        Map<Long, Long> capturedUsers = readCapturedUsers();
+        ReceiveHandler receiveHandler = new ReceiveHandler();
+        TrafficCaptureFile.Reader reader = TrafficCaptureFile.read(path);
+        EventLoopGroup group = new DefaultEventLoopGroup();
+        LocalAddress address = new LocalAddress("TrafficReplay-" + System.nanoTime());
+        Map<Long, Channel> clients = new HashMap<>();
+        long packets = 0;
+        try{
+            Channel server = new ServerBootstrap().group(group).channel(LocalServerChannel.class).childHandler(new ChannelInitializer<LocalChannel>() {
+                @Override
+                protected void initChannel(LocalChannel ch) {
+                    ch.pipeline().addLast(ProtoEncoder.INSTANCE);
+                    ch.pipeline().addLast(JsonEncoder.INSTANCE);
+                    ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(ByteOrder.BIG_ENDIAN, pers.winter.framework.server.codec.Constants.MAX_PACKAGE_LENGTH,0,4,0,0,true));
+                    ch.pipeline().addLast(new MessageDecoder());
+                    ch.pipeline().addLast(receiveHandler);
+                }
+            }).bind(address).sync().channel();
+            Bootstrap clientBootstrap = new Bootstrap().group(group).channel(LocalChannel.class).handler(DISCARD_HANDLER);
+            long st = System.nanoTime();
+            while(reader.next()){
+                if(speed > 0){
+                    long due = st + (long) (reader.getNanos() / speed);
+                    long wait;
+                    while((wait = due - System.nanoTime()) > 0){
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                if(reader.getType() == TrafficCaptureFile.TYPE_CLOSE){
+                    Channel client = clients.remove(reader.getConnectionID());
+                    if(client != null){
+                        client.close();
+                    }
+                    continue;
+                }
+                Channel client = clients.get(reader.getConnectionID());
+                if(client == null){
+                    client = clientBootstrap.connect(address).sync().channel();
+                    clients.put(reader.getConnectionID(), client);
+                    Long userID = capturedUsers.get(reader.getConnectionID());
+                    if(userID != null){
+                        receiveHandler.users.put(client.localAddress(), userID);
+                    }
+                }
+                client.writeAndFlush(Unpooled.copiedBuffer(reader.getPacket()));
+                packets++;
+            }
+            logger.info("Replayed {} packages of {} in {} ms.", packets, path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - st));
+            for(Channel client : clients.values()){
+                client.close().sync();
+            }
+            server.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+        return packets;
+    }
+
+    /**
+     * Read the user id each connection logged in as during the capture.
+     * @return Captured user id by capture connection id, connections never logged in are absent.
+     */
+    private Map<Long, Long> readCapturedUsers() throws IOException {
+        TrafficCaptureFile.Reader reader = TrafficCaptureFile.read(path);
+        Map<Long, Long> users = new HashMap<>();
+        while(reader.next()){
+            if(reader.getUserID() != 0){
+                users.putIfAbsent(reader.getConnectionID(), reader.getUserID());
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Server side of a stand-in connection, passes messages to the message center like {@link pers.winter.framework.server.codec.SocketServerHandler}.
+     * Connections of captured users are logged in as them before their first message.
+     */
+    @ChannelHandler.Sharable
+    private static class ReceiveHandler extends ChannelInboundHandlerAdapter {
+        //Captured user id by the address of the stand-in client.
+        private final Map<SocketAddress, Long> users = new ConcurrentHashMap<>();
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if(msg instanceof AbstractBaseMessage){
+                AbstractBaseMessage baseMessage = (AbstractBaseMessage) msg;
+                Channel channel = ctx.channel();
+                Long userID = users.get(channel.remoteAddress());
+                if(userID != null){
+                    if(baseMessage instanceof Handshake || baseMessage instanceof RoleLogin){
+                        logger.debug("Replayed {} of user {} skipped.", baseMessage.getClass().getSimpleName(), userID);
+                        return;
+                    }
+                    if(channel.attr(Constants.ATTRIBUTE_KEY_VERIFIED).get() == null){
+                        channel.attr(Constants.ATTRIBUTE_KEY_VERIFIED).set(true);
+                        SessionContainer.getInstance().buildSession(userID, channel);
+                    }
+                }
+                baseMessage.setContext(ctx);
+                MessageCenter.INSTANCE.receiveMessage(baseMessage);
+            } else {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
+    /**
+     * Client side of a stand-in connection, drops the responses.
+     */
+    @ChannelHandler.Sharable
+    private static class DiscardHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+}
@@ -16,11 +16,15 @@
 package pers.winter.framework.server.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 import pers.winter.framework.message.AbstractBaseMessage;
 
+import java.io.IOException;
+
 /**
  * Message encoder for JSON message
  * @author Winter
@@ -31,12 +35,24 @@ public class JsonEncoder extends MessageToByteEncoder<AbstractBaseMessage> {
     private JsonEncoder(){}
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, AbstractBaseMessage message, ByteBuf byteBuf) throws Exception {
-        byte[] data = message.serialized();
-        int length = Constants.ENCODE_HEADER_LENGTH + data.length;
-        byteBuf.writeInt(length);
+        writeMessage(message, byteBuf);
+    }
+
+    /**
+     * Write the message package of a JSON message, with the header, to the buffer.
+     * The JSON is streamed into the buffer, and the length is filled in after it.
+     */
+    static void writeMessage(AbstractBaseMessage message, ByteBuf byteBuf){
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);
         byteBuf.writeByte(Constants.CODEC_JSON);
         int messageID = JsonMessageDictionary.getMessageID(message.getClass());
         byteBuf.writeInt(messageID);
-        byteBuf.writeBytes(data);
+        try{
+            message.serializeTo(new ByteBufOutputStream(byteBuf));
+        } catch (IOException e){
+            throw new EncoderException(e);
+        }
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - Integer.BYTES);
     }
 }
@@ -44,6 +44,23 @@ public class JsonMessageDictionary {
     public static int getMessageID(Class<? extends AbstractBaseMessage> cls){
         return DICTIONARY.inverse().get(cls);
     }
+    /**
+     * Look up the message id by message class, 0 if the class is not in the dictionary
+     */
+    public static int getMessageIDOrZero(Class<?> cls){
+        Integer id = DICTIONARY.inverse().get(cls);
+        return id == null ? 0 : id;
+    }
+    /**
+     * Max message id in the dictionary
+     */
+    public static int getMaxMessageID(){
+        int max = 0;
+        for(int id : DICTIONARY.keySet()){
+            max = Math.max(max, id);
+        }
+        return max;
+    }
     private static final BiMap<Integer, Class<? extends AbstractBaseMessage>> DICTIONARY = HashBiMap.create();
     static {
         DICTIONARY.put(1, Hello.class);
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.server.codec;
+
+import com.google.protobuf.GeneratedMessageV3;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pers.winter.framework.message.AbstractBaseMessage;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Write the same message to many channels, like world chats and server announcements.
+ * The message is serialized only once into a reference counted buffer, and every channel writes a retained duplicate of it,
+ * rather than encoding the message again in the encoders of each channel.
+ * Channels are grouped by their event loops, and each event loop writes its whole group in one task.
+ * @author Winter
+ */
+public class MessageBroadcaster {
+    private static final Logger logger = LogManager.getLogger(MessageBroadcaster.class);
+    private MessageBroadcaster(){}
+
+    /**
+     * Broadcast a message to the channels, inactive and null channels are skipped.
+     * @param message A JSON message or a Protocol Buffers message.
+     * @param channels The channels to write.
+     * @return Count of the channels written.
+     */
+    public static int broadcast(Object message, Iterable<Channel> channels){
+        Map<EventLoop, List<Channel>> groups = new IdentityHashMap<>();
+        int count = 0;
+        for(Channel channel : channels){
+            if(channel != null && channel.isActive()){
+                groups.computeIfAbsent(channel.eventLoop(), loop -> new ArrayList<>()).add(channel);
+                count++;
+            }
+        }
+        if(count == 0){
+            return 0;
+        }
+        ByteBuf encoded = encode(message);
+        try{
+            for(Map.Entry<EventLoop, List<Channel>> entry : groups.entrySet()){
+                EventLoop eventLoop = entry.getKey();
+                List<Channel> group = entry.getValue();
+                ByteBuf shared = encoded.retainedDuplicate();
+                if(eventLoop.inEventLoop()){
+                    writeGroup(group, shared);
+                    continue;
+                }
+                try{
+                    eventLoop.execute(() -> writeGroup(group, shared));
+                } catch (RejectedExecutionException e){
+                    shared.release();
+                    logger.debug("Broadcast to {} channels skipped, event loop is shutting down.", group.size());
+                }
+            }
+        } finally {
+            encoded.release();
+        }
+        return count;
+    }
+
+    /**
+     * Serialize a message into a new message package, as the encoders do.
+     * @param message A JSON message or a Protocol Buffers message.
+     * @return The buffer, must be released by the caller.
+     */
+    public static ByteBuf encode(Object message){
+        ByteBuf byteBuf = ByteBufAllocator.DEFAULT.buffer();
+        try{
+            if(message instanceof AbstractBaseMessage){
+                JsonEncoder.writeMessage((AbstractBaseMessage) message, byteBuf);
+            } else if(message instanceof GeneratedMessageV3){
+                ProtoEncoder.writeMessage((GeneratedMessageV3) message, byteBuf);
+            } else {
+                throw new IllegalArgumentException("Unsupported message type " + message.getClass().getName());
+            }
+        } catch (RuntimeException e){
+            byteBuf.release();
+            throw e;
+        }
+        return byteBuf;
+    }
+
+    private static void writeGroup(List<Channel> group, ByteBuf shared){
+        try{
+            for(Channel channel : group){
+                channel.writeAndFlush(shared.retainedDuplicate(), channel.voidPromise());
+            }
+        } finally {
+            shared.release();
+        }
+    }
+}
@@ -21,11 +21,15 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pers.winter.framework.message.AbstractBaseMessage;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
  * Decode byte to different types of message
+ * Messages are parsed straight from the bytes of the received buffer, without a new array or String per package:
+ * from the backing array of a heap buffer, or from an array reused by the network thread for direct buffers.
  * @author Winter
  */
 public class MessageDecoder extends ByteToMessageDecoder {
@@ -35,22 +39,39 @@ public class MessageDecoder extends ByteToMessageDecoder {
         int length = byteBuf.readInt();
         byte decoderFlag = byteBuf.readByte();
         int messageID = byteBuf.readInt();
-        byte[] bytes = new byte[length - Constants.ENCODE_HEADER_LENGTH];
-        byteBuf.readBytes(bytes);
+        int dataLength = length - Constants.ENCODE_HEADER_LENGTH;
+        byte[] bytes;
+        int offset;
+        if(byteBuf.hasArray()){
+            bytes = byteBuf.array();
+            offset = byteBuf.arrayOffset() + byteBuf.readerIndex();
+        } else {
+            bytes = dataLength <= ScratchBytes.MAX_LENGTH ? ScratchBytes.get(dataLength) : new byte[dataLength];
+            offset = 0;
+            byteBuf.getBytes(byteBuf.readerIndex(), bytes, 0, dataLength);
+        }
+        byteBuf.skipBytes(dataLength);
         Object request = null;
         try{
             if(decoderFlag == Constants.CODEC_JSON){
-                String json = new String(bytes);
-                request = JSON.parseObject(json, JsonMessageDictionary.getMessageClass(messageID));
+                AbstractBaseMessage message = JSON.parseObject(bytes, offset, dataLength, StandardCharsets.UTF_8, JsonMessageDictionary.getMessageClass(messageID));
+                if(message != null){
+                    message.setMessageID(messageID);
+                    message.setDecodeNanos(System.nanoTime());
+                }
+                request = message;
             } else if(decoderFlag == Constants.CODEC_PROTO){
-                request =  ProtoMessageDictionary.getMessageParser(messageID).parseFrom(bytes);
+                request = ProtoMessageDictionary.getMessageParser(messageID).parseFrom(bytes, offset, dataLength);
             }
         } catch (Exception e){
             logger.info("Decode message exception!",e);
         }
-        logger.debug("Receive message: {}", request.getClass());
+        if(request != null){
+            logger.debug("Receive message: {}", request.getClass());
+        }
         return request;
     }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) throws Exception{
         Object request = decode(byteBuf);
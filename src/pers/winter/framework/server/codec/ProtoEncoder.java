@@ -15,12 +15,16 @@
  */
 package pers.winter.framework.server.codec;
 
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.GeneratedMessageV3;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
+import java.io.IOException;
+
 /**
  * Message encoder for Protocol Buffers message
  * @author Winter
@@ -31,12 +35,44 @@ public class ProtoEncoder extends MessageToByteEncoder<GeneratedMessageV3> {
     private ProtoEncoder(){}
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, GeneratedMessageV3 generatedMessageV3, ByteBuf byteBuf) throws Exception {
-        byte[] data = generatedMessageV3.toByteArray();
-        int length = Constants.ENCODE_HEADER_LENGTH + data.length;
+        writeMessage(generatedMessageV3, byteBuf);
+    }
+
+    /**
+     * Write the message package of a Protocol Buffers message, with the header, to the buffer.
+     * The buffer is sized to the whole package first, then the message is serialized into the backing array in place.
+     * Direct buffers get the message through the array reused by the thread instead, as protobuf allocates more for
+     * writing a direct buffer than the message itself, except for large messages.
+     */
+    static void writeMessage(GeneratedMessageV3 generatedMessageV3, ByteBuf byteBuf){
+        int size = generatedMessageV3.getSerializedSize();
+        int length = Constants.ENCODE_HEADER_LENGTH + size;
+        byteBuf.ensureWritable(Integer.BYTES + length);
         byteBuf.writeInt(length);
         byteBuf.writeByte(Constants.CODEC_PROTO);
         int messageID = ProtoMessageDictionary.getMessageID(generatedMessageV3);
         byteBuf.writeInt(messageID);
-        byteBuf.writeBytes(data);
+        int dataIndex = byteBuf.writerIndex();
+        byte[] scratch = null;
+        CodedOutputStream output;
+        if(byteBuf.hasArray()){
+            output = CodedOutputStream.newInstance(byteBuf.array(), byteBuf.arrayOffset() + dataIndex, size);
+        } else if(size <= ScratchBytes.MAX_LENGTH){
+            scratch = ScratchBytes.get(size);
+            output = CodedOutputStream.newInstance(scratch, 0, size);
+        } else {
+            output = CodedOutputStream.newInstance(byteBuf.internalNioBuffer(dataIndex, size));
+        }
+        try{
+            generatedMessageV3.writeTo(output);
+            output.flush();
+            output.checkNoSpaceLeft();
+        } catch (IOException e){
+            throw new EncoderException(e);
+        }
+        if(scratch != null){
+            byteBuf.setBytes(dataIndex, scratch, 0, size);
+        }
+        byteBuf.writerIndex(dataIndex + size);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.server.codec;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Byte array reused by each thread to stage message bodies between direct buffers and the serializers.
+ * The array is only held during a single encode or decode call, and is never handed out beyond it.
+ * @author Winter
+ */
+final class ScratchBytes {
+    /**
+     * Largest body staged in the array, so that a rare large package does not pin a large array to the thread.
+     */
+    static final int MAX_LENGTH = 64 * 1024;
+    private static final FastThreadLocal<byte[]> BYTES = new FastThreadLocal<byte[]>(){
+        @Override
+        protected byte[] initialValue() {
+            return new byte[1024];
+        }
+    };
+    private ScratchBytes(){}
+
+    /**
+     * Get the array of current thread, with at least the length.
+     */
+    static byte[] get(int length){
+        byte[] bytes = BYTES.get();
+        if(bytes.length < length){
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            BYTES.set(bytes);
+        }
+        return bytes;
+    }
+}
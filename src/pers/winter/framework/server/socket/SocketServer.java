@@ -29,6 +29,7 @@ import org.apache.logging.log4j.Logger;
 import pers.winter.framework.config.ApplicationConfig;
 import pers.winter.framework.config.ConfigManager;
 import pers.winter.framework.server.IServer;
+import pers.winter.framework.server.capture.TrafficCaptureHandler;
 import pers.winter.framework.server.codec.*;
 
 import java.nio.ByteOrder;
@@ -57,6 +58,9 @@ public class SocketServer implements IServer {
                 ch.pipeline().addLast(ProtoEncoder.INSTANCE);
                 ch.pipeline().addLast(JsonEncoder.INSTANCE);
                 ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(ByteOrder.BIG_ENDIAN, Constants.MAX_PACKAGE_LENGTH,0,4,0,0,true));
+                if(TrafficCaptureHandler.INSTANCE.isStarted()){
+                    ch.pipeline().addLast(TrafficCaptureHandler.INSTANCE);
+                }
                 ch.pipeline().addLast(new MessageDecoder());
                 ch.pipeline().addLast(SocketServerHandler.INSTANCE);
             }
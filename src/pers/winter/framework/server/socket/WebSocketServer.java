@@ -33,6 +33,7 @@ import org.apache.logging.log4j.Logger;
 import pers.winter.framework.config.ApplicationConfig;
 import pers.winter.framework.config.ConfigManager;
 import pers.winter.framework.server.IServer;
+import pers.winter.framework.server.capture.TrafficCaptureHandler;
 import pers.winter.framework.server.codec.*;
 
 import java.util.concurrent.TimeUnit;
@@ -63,6 +64,9 @@ public class WebSocketServer implements IServer {
                 ch.pipeline().addLast(ProtoEncoder.INSTANCE);
                 ch.pipeline().addLast(JsonEncoder.INSTANCE);
                 ch.pipeline().addLast(new WebSocketFrameAggregator(Constants.MAX_PACKAGE_LENGTH));
+                if(TrafficCaptureHandler.INSTANCE.isStarted()){
+                    ch.pipeline().addLast(TrafficCaptureHandler.INSTANCE);
+                }
                 ch.pipeline().addLast(new WebSocketServerHandler());
             }
         });
@@ -15,6 +15,9 @@
  */
 package pers.winter.framework.threadpool;
 
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
 /**
  * The handler for thread pool executors.
  * Before put tasks into the executor, you must create an handler to deal with the tasks.
@@ -27,10 +30,66 @@ public interface IExecutorHandler<T> {
      */
     void execute(T task) throws Throwable;
 
+    /**
+     * The thread pool calls this method to execute a task, which may complete asynchronously.
+     * While the returned stage is not completed, the following tasks of the same producer wait, but the thread moves on to
+     * other producers, so a task waiting for a remote call keeps the order of the producer without blocking a thread.
+     * Work left after the stage completes should be passed to {@link pers.winter.framework.threadpool.fair.FairPoolExecutor#resumeExecutor()}
+     * rather than run in the thread completing the stage.
+     * By default the task is executed synchronously with {@link IExecutorHandler#execute(Object)}.
+     * @param task Current task.
+     * @return A stage completed when the task is done, or null if it is already done.
+     */
+    default CompletionStage<?> executeAsync(T task) throws Throwable {
+        execute(task);
+        return null;
+    }
+
     /**
      * If thread pool gets an exception while calling {@link IExecutorHandler#execute(Object)}, it will call this method to deal with the exception.
      * @param task The task causing exception
      * @param cause The exception
      */
     void exceptionCaught(T task, Throwable cause);
+
+    /**
+     * The thread pool calls this method when a task is rejected because the queues are full, or when a task is dropped
+     * to make room for a newer one, see {@link pers.winter.framework.threadpool.fair.FairPoolExecutor.RejectPolicy}.
+     * A rejected task is never executed.
+     * @param task The task rejected
+     */
+    default void rejected(T task){}
+
+    /**
+     * The thread pool calls this method instead of {@link IExecutorHandler#execute(Object)} when a task added with a time
+     * to live has waited in the queue longer than it, see {@link pers.winter.framework.threadpool.fair.FairPoolExecutor#add(Object, Object, long, java.util.concurrent.TimeUnit)}.
+     * An expired task is never executed.
+     * @param task The task expired
+     */
+    default void onExpired(T task){}
+
+    /**
+     * Tasks of the same producer with the same non-null batch key, queued one after another, are taken together and passed
+     * to {@link IExecutorHandler#executeBatch(List)} in one call, so high frequency tasks share the cost of a call.
+     * Batch keys are compared with {@link Object#equals(Object)}.
+     * @param task A queued task.
+     * @return The batch key, or null to execute the task alone, which is the default.
+     */
+    default Object batchKey(T task){
+        return null;
+    }
+
+    /**
+     * Execute a batch of tasks with the same batch key, in the order they were added.
+     * If it throws, {@link IExecutorHandler#exceptionCaught(Object, Throwable)} is called with the first task.
+     * By default the tasks are executed one by one.
+     * @param tasks The tasks, at least one.
+     * @return A stage completed when the batch is done, or null if it is already done, see {@link IExecutorHandler#executeAsync(Object)}.
+     */
+    default CompletionStage<?> executeBatch(List<T> tasks) throws Throwable {
+        for(T task : tasks){
+            execute(task);
+        }
+        return null;
+    }
 }
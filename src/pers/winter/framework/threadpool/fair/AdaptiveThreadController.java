@@ -0,0 +1,141 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Decide when a {@link FairPoolExecutor} grows or shrinks its threads, called once per {@link #INTERVAL} by a timer.
+ * <ul>
+ *     <li>Grow: user queues are waiting in the schedule queue and the threads are busy for {@link #GROW_TICKS} ticks in a row.
+ *     Work that mostly blocks grows by a quarter of the threads, work that mostly runs on CPU grows one by one and never
+ *     beyond the count of processors.</li>
+ *     <li>Shrink: the schedule queue is empty and the threads are mostly idle for {@link #SHRINK_TICKS} ticks in a row,
+ *     one thread is retired each time, and one more after each cooldown while it stays quiet.</li>
+ * </ul>
+ * After each change the controller waits {@link #COOLDOWN_TICKS} ticks so the new threads can take effect.
+ * @author Winter
+ */
+class AdaptiveThreadController {
+    private static final Logger logger = LogManager.getLogger(AdaptiveThreadController.class);
+    static final long INTERVAL = 1000;
+    private static final double HIGH_UTILIZATION = 0.8;
+    private static final double LOW_UTILIZATION = 0.3;
+    //Busy time not spent on CPU, above which the work is taken as blocking.
+    private static final double BLOCKING_RATIO = 0.5;
+    private static final int GROW_TICKS = 2;
+    private static final int SHRINK_TICKS = 10;
+    private static final int COOLDOWN_TICKS = 2;
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private final FairPoolExecutor<?> executor;
+    private final int minThreads;
+    private final int maxThreads;
+    private final ThreadMXBean threadMXBean;
+    private final long[] lastThreadIds;
+    private final long[] lastCpuNanos;
+    private long lastTickNanos;
+    private long lastBusyNanos;
+    private int overloadedTicks;
+    private int idleTicks;
+    private int cooldownTicks;
+
+    AdaptiveThreadController(FairPoolExecutor<?> executor, int minThreads, int maxThreads){
+        this.executor = executor;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = bean.isThreadCpuTimeSupported() ? bean : null;
+        if(threadMXBean != null && !threadMXBean.isThreadCpuTimeEnabled()){
+            threadMXBean.setThreadCpuTimeEnabled(true);
+        }
+        this.lastThreadIds = new long[maxThreads];
+        this.lastCpuNanos = new long[maxThreads];
+        this.lastTickNanos = System.nanoTime();
+    }
+
+    void adjust(){
+        long now = System.nanoTime();
+        long interval = now - lastTickNanos;
+        long busy = executor.getBusyNanos();
+        long busyDelta = busy - lastBusyNanos;
+        long cpuDelta = sampleCpuNanos();
+        lastTickNanos = now;
+        lastBusyNanos = busy;
+        int active = executor.getActiveThreadCount();
+        if(interval <= 0 || active <= 0){
+            return;
+        }
+        double utilization = (double) busyDelta / ((double) interval * active);
+        //-1 means unknown, the cpu time of threads is not supported by the JVM.
+        double blockingRatio = cpuDelta < 0 || busyDelta <= 0 ? -1 : Math.max(0, 1 - (double) cpuDelta / busyDelta);
+        int depth = executor.getScheduleQueueDepth();
+        overloadedTicks = depth > 0 && utilization >= HIGH_UTILIZATION ? overloadedTicks + 1 : 0;
+        idleTicks = depth == 0 && utilization <= LOW_UTILIZATION ? idleTicks + 1 : 0;
+        if(cooldownTicks > 0){
+            cooldownTicks--;
+            return;
+        }
+        if(overloadedTicks >= GROW_TICKS && active < maxThreads){
+            boolean blocking = blockingRatio < 0 || blockingRatio >= BLOCKING_RATIO;
+            if(!blocking && active >= PROCESSORS){
+                //More threads won't help cpu bound work.
+                return;
+            }
+            //Blocking work doubles the threads, but never beyond the count of waiting user queues.
+            int target = blocking ? active + Math.min(active, depth) : active + 1;
+            int count = executor.growThreads(Math.min(target, maxThreads));
+            if(count > active){
+                logger.info("Executor {} grows to {} threads, depth {}, utilization {}, blocking ratio {}.",
+                        executor.getName(), count, depth, String.format("%.2f",utilization), String.format("%.2f",blockingRatio));
+                overloadedTicks = 0;
+                cooldownTicks = COOLDOWN_TICKS;
+            }
+        } else if(idleTicks >= SHRINK_TICKS && active > minThreads){
+            int count = executor.shrinkThread();
+            logger.info("Executor {} shrinks to {} threads, utilization {}.", executor.getName(), count, String.format("%.2f",utilization));
+            //Keep the idle ticks, so it goes on shrinking after each cooldown while the executor stays quiet.
+            cooldownTicks = COOLDOWN_TICKS;
+        }
+    }
+
+    /**
+     * Sum of the cpu time spent by all threads since the last tick, or -1 if it is not supported.
+     */
+    private long sampleCpuNanos(){
+        if(threadMXBean == null){
+            return -1;
+        }
+        long sum = 0;
+        for(int i = 0;i < maxThreads;i++){
+            long threadId = executor.getThread(i).getThreadId();
+            long cpu = threadMXBean.getThreadCpuTime(threadId);
+            if(cpu < 0){
+                //Not started or already dead.
+                lastThreadIds[i] = 0;
+                lastCpuNanos[i] = 0;
+                continue;
+            }
+            sum += lastThreadIds[i] == threadId ? cpu - lastCpuNanos[i] : cpu;
+            lastThreadIds[i] = threadId;
+            lastCpuNanos[i] = cpu;
+        }
+        return sum;
+    }
+}
@@ -18,16 +18,33 @@ package pers.winter.framework.threadpool.fair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pers.winter.framework.entity.Transaction;
+import pers.winter.framework.monitor.LatencyHistogram;
 import pers.winter.framework.monitor.MonitorCenter;
 import pers.winter.framework.threadpool.IExecutorHandler;
 import pers.winter.framework.timer.TimerTaskManager;
+import pers.winter.monitor.ExecutorTaskExpired;
+import pers.winter.monitor.ExecutorTaskRejected;
 import pers.winter.monitor.ExecutorThreadBlocking;
 
-import java.util.Iterator;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
 
 /**
  * A fair thread pool executor.
@@ -40,16 +57,78 @@ public class FairPoolExecutor<T> {
     private static final Logger logger = LogManager.getLogger(FairPoolExecutor.class);
     //If a user queue keeps idle for 5 minutes or longer, it will be removed.
     private static final int INACTIVE_EXPIRE_TIME = 60*5;
+    //Idle user queues are checked every 5 seconds, only those idle for INACTIVE_EXPIRE_TIME.
+    private static final int INACTIVE_EXPIRE_TICK = 5;
+    //Max count of evicted user queues kept for reuse.
+    private static final int USER_QUEUE_POOL_SIZE = 4096;
+    //Max count of tasks coalesced into one batch, see IExecutorHandler.batchKey.
+    private static final int MAX_BATCH_SIZE = 256;
     //If a thread costs more than 10 seconds to do a task, report to monitor center.
     private static final int THREAD_BLOCK_TIME = 1000*10;
+    //User queue of the turn running on the current thread.
+    private static final ThreadLocal<FairPoolUserQueue<?>> TURN_QUEUE = new ThreadLocal<>();
     private final String name;
     private final IExecutorHandler<T> handler;
-    private FairPoolThread[] threads;
-    private LinkedBlockingQueue<FairPoolUserQueue<T>> taskSchedule = new LinkedBlockingQueue<>();
+    private FairPoolThread<T>[] threads;
+    private ScheduleMode scheduleMode = ScheduleMode.GLOBAL;
+    private IFairPoolScheduler<T> scheduler = new GlobalQueueScheduler<>();
+    private int laneCount = 1;
+    private ToIntFunction<? super T> laneResolver;
+    private LanePolicy lanePolicy = LanePolicy.STRICT;
+    private int[] laneWeights;
+    private ToIntFunction<Object> weightResolver;
+    //Max count of user queue turns running on virtual threads at the same time, 0 means virtual threads are not used.
+    private int virtualThreadConcurrency;
+    private ExecutorService virtualThreadExecutor;
+    private Semaphore virtualThreadPermits;
+    //Start timestamp of each running virtual thread turn, watched by the thread monitor like the worker threads.
+    private final ConcurrentHashMap<Thread, Long> virtualTurnStarts = new ConcurrentHashMap<>();
+    //Max count of tasks and max time in nanoseconds a worker spends on one user queue before rescheduling it, 0 time means no limit.
+    private int turnMaxTasks = 1;
+    private long turnMaxNanos;
+    private final LongAdder turnCount = new LongAdder();
+    private final LongAdder executedTaskCount = new LongAdder();
+    //Max count of queued tasks of a producer and of the whole executor, 0 means unbounded.
+    private int userCapacity;
+    private long executorCapacity;
+    private RejectPolicy rejectPolicy = RejectPolicy.REJECT;
+    private long blockTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+    //Queued tasks of the whole executor, only counted while executorCapacity is set.
+    private final AtomicLong pendingTasks = new AtomicLong();
+    private final LongAdder rejectedCount = new LongAdder();
+    private long reportedRejectedCount;
+    private final LongAdder expiredCount = new LongAdder();
+    private long reportedExpiredCount;
+    private volatile boolean metricsEnabled = true;
+    //Time from adding a task to starting it.
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    //Time of running a task.
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    //Time from putting a user queue into the schedule to starting its turn.
+    private final LatencyHistogram userLag = new LatencyHistogram();
+    private final LongAdder activeUserQueues = new LongAdder();
+    //Count of running threads, threads[activeThreadCount..] are not started or retired.
+    private volatile int activeThreadCount;
+    private AdaptiveThreadController adaptiveController;
+    private TimerTaskManager.RepeatedTimerTask adaptiveTask;
+    //Time the threads spend on turns, only counted in adaptive mode.
+    private final LongAdder busyNanos = new LongAdder();
+    //Count of workers parked for lack of work, producers only look for a worker to wake up when it is positive.
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private int spinTries;
+    private int yieldTries;
+    //Count of workers spinning for work, producers don't wake up parked workers while any worker spins.
+    private final AtomicInteger spinningCount = new AtomicInteger();
     private ConcurrentHashMap<Object, FairPoolUserQueue<T>> userTasks = new ConcurrentHashMap<>();
+    private final IdleExpiryWheel<T> expiryWheel = new IdleExpiryWheel<>(TimeUnit.SECONDS.toMillis(INACTIVE_EXPIRE_TIME), TimeUnit.SECONDS.toMillis(INACTIVE_EXPIRE_TICK));
+    //Evicted user queues, reused for new producer ids.
+    private final ArrayBlockingQueue<FairPoolUserQueue<T>> userQueuePool = new ArrayBlockingQueue<>(USER_QUEUE_POOL_SIZE);
     private TimerTaskManager.RepeatedTimerTask clearTask;
     private TimerTaskManager.RepeatedTimerTask threadMonitorTask;
     private volatile State state = State.NEW;
+    //Set by the graceful terminate, no more task is accepted while the remaining ones are drained.
+    private volatile boolean intakeClosed = false;
 
     /**
      * Create an executor using default processors.
@@ -75,14 +154,315 @@ public class FairPoolExecutor<T> {
         }
         threads = new FairPoolThread[threadSize];
         for(int i = 0; i < threadSize;i++){
-            threads[i] = new FairPoolThread(String.format("%s-%d",this.name,i),this,this.handler);
+            threads[i] = new FairPoolThread<>(String.format("%s-%d",this.name,i),i,this);
         }
+        activeThreadCount = threadSize;
+    }
+
+    /**
+     * Let the executor grow and shrink its threads between minThreads and maxThreads, must be called before start.
+     * Every second the executor checks the schedule queue depth, the thread utilization and how much of the busy time
+     * the threads spend blocked rather than on CPU. It grows while user queues keep waiting and threads keep busy, faster
+     * for blocking work, and shrinks one thread at a time after a long quiet period. The thread count given to the
+     * constructor is the initial count. Only works with {@link ScheduleMode#GLOBAL} and without virtual threads.
+     * @param minThreads Min count of threads, at least 1.
+     * @param maxThreads Max count of threads.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setAdaptiveThreads(int minThreads, int maxThreads) throws IllegalStateException {
+        checkNotStarted();
+        minThreads = Math.max(minThreads, 1);
+        maxThreads = Math.max(maxThreads, minThreads);
+        int initial = Math.min(Math.max(activeThreadCount, minThreads), maxThreads);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        FairPoolThread<T>[] newThreads = new FairPoolThread[maxThreads];
+        for(int i = 0; i < maxThreads;i++){
+            newThreads[i] = i < threads.length ? threads[i] : new FairPoolThread<>(String.format("%s-%d",this.name,i),i,this);
+        }
+        threads = newThreads;
+        activeThreadCount = initial;
+        adaptiveController = new AdaptiveThreadController(this, minThreads, maxThreads);
+        scheduler = createScheduler();
+    }
+
+    boolean isAdaptiveThreads(){
+        return adaptiveController != null;
+    }
+
+    /**
+     * Count of running threads.
+     */
+    public int getActiveThreadCount(){
+        return activeThreadCount;
     }
 
     public String getName(){
         return name;
     }
 
+    /**
+     * Set how the scheduled user queues are dispatched to the worker threads, must be called before start.
+     * @param scheduleMode The schedule mode, {@link ScheduleMode#GLOBAL} by default.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setScheduleMode(ScheduleMode scheduleMode) throws IllegalStateException {
+        checkNotStarted();
+        this.scheduleMode = scheduleMode;
+        scheduler = createScheduler();
+    }
+
+    private IFairPoolScheduler<T> createScheduler(){
+        if(laneCount > 1){
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            IFairPoolScheduler<T>[] lanes = new IFairPoolScheduler[laneCount];
+            for(int i = 0;i < laneCount;i++){
+                lanes[i] = createModeScheduler();
+            }
+            return new LaneScheduler<>(lanes, lanePolicy == LanePolicy.WEIGHTED ? laneWeights : null, threads.length);
+        }
+        return createModeScheduler();
+    }
+
+    private IFairPoolScheduler<T> createModeScheduler(){
+        if(scheduleMode == ScheduleMode.WORK_STEALING){
+            return new WorkStealingScheduler<>(threads.length);
+        } else if(scheduleMode == ScheduleMode.SHARDED){
+            return new ShardedScheduler<>(threads.length);
+        } else {
+            return new GlobalQueueScheduler<>();
+        }
+    }
+
+    /**
+     * Split the executor into priority lanes, must be called before start and before any task is added.
+     * Every task is put into the lane given by the resolver, lane 0 has the highest priority. A user queue keeps a queue
+     * per lane and always takes from the highest lane first, so urgent tasks of a producer jump ahead of its bulk tasks,
+     * while the order inside a lane is kept. A producer still runs on one thread at a time whatever lanes its tasks are in.
+     * A user queue is scheduled into the highest lane it has tasks in when it is scheduled, so an urgent task added to a
+     * user queue already waiting in a lower lane waits for that turn.
+     * @param laneCount Count of lanes.
+     * @param laneResolver Gives the lane of a task, out of range lanes are clamped.
+     * @param lanePolicy How workers choose between the lanes, see {@link LanePolicy}.
+     * @param weights Share of turns of each lane for {@link LanePolicy#WEIGHTED}, one per lane. 2^(laneCount-1-lane) by default.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setLanes(int laneCount, ToIntFunction<? super T> laneResolver, LanePolicy lanePolicy, int... weights) throws IllegalStateException {
+        checkNotStarted();
+        if(weights != null && weights.length > 0 && weights.length != laneCount){
+            throw new IllegalArgumentException(String.format("%d weights for %d lanes!", weights.length, laneCount));
+        }
+        this.laneCount = Math.max(laneCount, 1);
+        this.laneResolver = laneResolver;
+        this.lanePolicy = lanePolicy;
+        this.laneWeights = new int[this.laneCount];
+        for(int i = 0;i < this.laneCount;i++){
+            laneWeights[i] = weights != null && weights.length > 0 ? Math.max(weights[i], 1) : 1 << Math.min(this.laneCount - 1 - i, 16);
+        }
+        scheduler = createScheduler();
+    }
+
+    public int getLaneCount(){
+        return laneCount;
+    }
+
+    /**
+     * Give every producer a weight by its id, must be called before start and before any task is added.
+     * The user queues share the threads by deficit round-robin: in each round a user queue runs weight times the turn
+     * quantum, so a weight 4 producer like a guild or a world boss gets about 4 times the tasks, or the time if the turn
+     * quantum has a time limit, of a weight 1 producer while both are busy. By default every producer has weight 1.
+     * @param weightResolver Gives the weight of a producer id when its user queue is created, at least 1.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setWeightResolver(ToIntFunction<Object> weightResolver) throws IllegalStateException {
+        checkNotStarted();
+        this.weightResolver = weightResolver;
+    }
+
+    /**
+     * Change the weight of a producer, see {@link #setWeightResolver(ToIntFunction)}. Takes effect from its next turn.
+     * @param id Producer id
+     * @param weight Weight of the producer, at least 1.
+     */
+    public void setWeight(Object id, int weight){
+        FairPoolUserQueue<T> userQueue = acquireUserQueue(id);
+        try{
+            userQueue.setWeight(weight);
+        } finally {
+            userQueue.release();
+        }
+    }
+
+    int resolveWeight(Object id){
+        return weightResolver == null ? 1 : Math.max(weightResolver.applyAsInt(id), 1);
+    }
+
+    /**
+     * Lane of a task given by the lane resolver.
+     */
+    int getLane(T task){
+        if(laneResolver == null){
+            return 0;
+        }
+        int lane = laneResolver.applyAsInt(task);
+        return lane < 0 ? 0 : Math.min(lane, laneCount - 1);
+    }
+
+    public ScheduleMode getScheduleMode(){
+        return scheduleMode;
+    }
+
+    /**
+     * Run every user queue turn on a new virtual thread, must be called before start.
+     * The worker threads then only dispatch the scheduled user queues, so a task blocking on IO does not hold a worker thread.
+     * A user queue is still scheduled once at a time, so tasks of one producer keep their order.
+     * If the running JVM does not support virtual threads, turns run on a cached pool of platform threads instead.
+     * @param concurrency Max count of turns running at the same time, 0 to run turns on the worker threads.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setVirtualThreadConcurrency(int concurrency) throws IllegalStateException {
+        checkNotStarted();
+        this.virtualThreadConcurrency = Math.max(concurrency, 0);
+    }
+
+    public int getVirtualThreadConcurrency(){
+        return virtualThreadConcurrency;
+    }
+
+    /**
+     * Set the quantum of a turn, must be called before start.
+     * In a turn a worker runs tasks of the same user queue until the queue is empty, or maxTasks tasks are done,
+     * or maxTime is used up, then the user queue goes back to the tail of the schedule.
+     * A bigger quantum saves scheduling cost for producers with many queued tasks, at the price of other producers waiting longer.
+     * By default a turn runs exactly one task, which is the fairest.
+     * @param maxTasks Max count of tasks in a turn, at least 1.
+     * @param maxTime Max time of a turn, checked after each task, 0 means no time limit.
+     * @param timeUnit Time unit of maxTime.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setTurnQuantum(int maxTasks, long maxTime, TimeUnit timeUnit) throws IllegalStateException {
+        checkNotStarted();
+        this.turnMaxTasks = Math.max(maxTasks, 1);
+        this.turnMaxNanos = Math.max(timeUnit.toNanos(maxTime), 0);
+    }
+
+    /**
+     * Set how idle workers wait for work, must be called before start.
+     * Waking up a parked thread costs tens of microseconds, spinning takes new work at once but burns the CPU while idle.
+     * @param waitStrategy See {@link WaitStrategy}.
+     * @param spinTries Count of busy-spin polls before yielding, only for {@link WaitStrategy#SPIN_THEN_PARK}.
+     * @param yieldTries Count of polls with {@link Thread#yield()} after spinning before parking, only for {@link WaitStrategy#SPIN_THEN_PARK}.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy, int spinTries, int yieldTries) throws IllegalStateException {
+        checkNotStarted();
+        this.waitStrategy = waitStrategy;
+        this.spinTries = Math.max(spinTries, 0);
+        this.yieldTries = Math.max(yieldTries, 0);
+    }
+
+    public WaitStrategy getWaitStrategy(){
+        return waitStrategy;
+    }
+
+    /**
+     * Bound the queues of the executor, must be called before start.
+     * Once a producer queue or the whole executor is full, new tasks are handled by the reject policy.
+     * @param userCapacity Max count of queued tasks of one producer, 0 means unbounded.
+     * @param executorCapacity Max count of queued tasks of the whole executor, 0 means unbounded.
+     * @param rejectPolicy What to do with a task while the queues are full.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setCapacity(int userCapacity, long executorCapacity, RejectPolicy rejectPolicy) throws IllegalStateException {
+        checkNotStarted();
+        this.userCapacity = Math.max(userCapacity, 0);
+        this.executorCapacity = Math.max(executorCapacity, 0);
+        this.rejectPolicy = rejectPolicy;
+    }
+
+    /**
+     * Set the max time a producer waits for room under {@link RejectPolicy#BLOCK}, 1 second by default.
+     * @throws IllegalStateException Throws while the executor is already started
+     */
+    public void setBlockTimeout(long timeout, TimeUnit timeUnit) throws IllegalStateException {
+        checkNotStarted();
+        this.blockTimeoutNanos = timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * Turn latency metrics on or off, on by default. Metrics cost two System.nanoTime() calls per task and one per turn.
+     */
+    public void setMetricsEnabled(boolean metricsEnabled){
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    public boolean isMetricsEnabled(){
+        return metricsEnabled;
+    }
+
+    /**
+     * Take a snapshot of the executor metrics.
+     * @param reset {@code true} to clear the latency histograms, so the next snapshot only covers the latencies after this one.
+     */
+    public FairPoolStatistics getStatistics(boolean reset){
+        return new FairPoolStatistics(name, activeThreadCount, activeUserQueues.sum(), scheduler.size(), turnCount.sum(),
+                executedTaskCount.sum(), rejectedCount.sum(), expiredCount.sum(), getFairnessIndex(reset), queueWait.snapshot(reset),
+                serviceTime.snapshot(reset), userLag.snapshot(reset));
+    }
+
+    /**
+     * Jain's fairness index of the tasks executed per weight, among the producers served since the previous reset.
+     * 1 means every producer got exactly its weighted share, 1/n means one producer got everything.
+     * Producers with less work than their share also lower the index, so it is meaningful while producers are busy.
+     */
+    private double getFairnessIndex(boolean reset){
+        double sum = 0;
+        double squareSum = 0;
+        int count = 0;
+        for(FairPoolUserQueue<T> userQueue : userTasks.values()){
+            long served = userQueue.takeServedSinceSnapshot(reset);
+            if(served > 0){
+                double share = (double) served / userQueue.getWeight();
+                sum += share;
+                squareSum += share * share;
+                count++;
+            }
+        }
+        return count == 0 ? 1 : sum * sum / (count * squareSum);
+    }
+
+    /**
+     * Count of tasks rejected or dropped by the reject policy since the executor started.
+     */
+    public long getRejectedCount(){
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Count of tasks skipped because their time to live elapsed, since the executor started.
+     */
+    public long getExpiredCount(){
+        return expiredCount.sum();
+    }
+
+    public int getTurnMaxTasks(){
+        return turnMaxTasks;
+    }
+
+    /**
+     * Average count of tasks run in a turn since the executor started.
+     * It stays at 1 while producers are served strictly one task per turn, and grows as the turn quantum trades fairness for throughput.
+     */
+    public double getAverageTasksPerTurn(){
+        long turns = turnCount.sum();
+        return turns == 0 ? 0 : (double) executedTaskCount.sum() / turns;
+    }
+
+    private void checkNotStarted() throws IllegalStateException {
+        if(state != State.NEW){
+            throw new IllegalStateException("Executor already started!");
+        }
+    }
+
     /**
      * Start the executor. Before put a task into the executor, you must start it.
      * @throws IllegalStateException Throws while the executor is already terminated
@@ -91,8 +471,15 @@ public class FairPoolExecutor<T> {
         if (state != State.NEW) {
             throw new IllegalStateException("Executor terminated!");
         }
+        if(adaptiveController != null && (scheduleMode != ScheduleMode.GLOBAL || virtualThreadConcurrency > 0)){
+            throw new IllegalStateException("Adaptive threads only work with GLOBAL schedule mode and without virtual threads!");
+        }
+        if(virtualThreadConcurrency > 0){
+            virtualThreadPermits = new Semaphore(virtualThreadConcurrency);
+            virtualThreadExecutor = newVirtualThreadExecutor();
+        }
         state = State.RUNNABLE;
-        for (int i = 0; i < threads.length; i++) {
+        for (int i = 0; i < activeThreadCount; i++) {
             threads[i].start();
         }
         initTimer();
@@ -102,18 +489,12 @@ public class FairPoolExecutor<T> {
         clearTask = TimerTaskManager.getInstance().newRepeatedTimeout(new Transaction(String.format("%sClearTask",name)) {
             @Override
             protected void process() {
-                Iterator<Map.Entry<Object,FairPoolUserQueue<T>>> iterator = userTasks.entrySet().iterator();
-                while(iterator.hasNext()){
-                    Map.Entry<Object,FairPoolUserQueue<T>> entry = iterator.next();
-                    if(entry.getValue().isIdle() && entry.getValue().getActiveTs()<System.currentTimeMillis() - INACTIVE_EXPIRE_TIME){
-                        iterator.remove();
-                    }
-                }
+                expiryWheel.expire(FairPoolExecutor.this::evictUserQueue);
             }
             @Override
             protected void failed() {
             }
-        },INACTIVE_EXPIRE_TIME,INACTIVE_EXPIRE_TIME, TimeUnit.SECONDS,0);
+        },INACTIVE_EXPIRE_TICK,INACTIVE_EXPIRE_TICK, TimeUnit.SECONDS,0);
         threadMonitorTask = TimerTaskManager.getInstance().newRepeatedTimeout(new Transaction(String.format("%sThreadMonitor",name)) {
             @Override
             protected void process() {
@@ -128,10 +509,48 @@ public class FairPoolExecutor<T> {
                         MonitorCenter.INSTANCE.report(report);
                     }
                 }
+                for(Map.Entry<Thread, Long> entry : virtualTurnStarts.entrySet()){
+                    if(nowTs - entry.getValue() > THREAD_BLOCK_TIME){
+                        ExecutorThreadBlocking report = new ExecutorThreadBlocking();
+                        report.setTime(nowTs);
+                        report.threadName = String.format("%s-virtual-%d", name, entry.getKey().getId());
+                        report.blockingTime = nowTs - entry.getValue();
+                        MonitorCenter.INSTANCE.report(report);
+                    }
+                }
+                long rejected = rejectedCount.sum();
+                if(rejected > reportedRejectedCount){
+                    ExecutorTaskRejected report = new ExecutorTaskRejected();
+                    report.setTime(nowTs);
+                    report.executorName = name;
+                    report.rejectedNum = rejected - reportedRejectedCount;
+                    report.rejectPolicy = rejectPolicy.name();
+                    reportedRejectedCount = rejected;
+                    MonitorCenter.INSTANCE.report(report);
+                }
+                long expired = expiredCount.sum();
+                if(expired > reportedExpiredCount){
+                    ExecutorTaskExpired report = new ExecutorTaskExpired();
+                    report.setTime(nowTs);
+                    report.executorName = name;
+                    report.expiredNum = expired - reportedExpiredCount;
+                    reportedExpiredCount = expired;
+                    MonitorCenter.INSTANCE.report(report);
+                }
             }
             @Override
             protected void failed() {}
         }, THREAD_BLOCK_TIME, THREAD_BLOCK_TIME, TimeUnit.MILLISECONDS,0);
+        if(adaptiveController != null){
+            adaptiveTask = TimerTaskManager.getInstance().newRepeatedTimeout(new Transaction(String.format("%sAdaptiveThreads",name)) {
+                @Override
+                protected void process() {
+                    adaptiveController.adjust();
+                }
+                @Override
+                protected void failed() {}
+            }, AdaptiveThreadController.INTERVAL, AdaptiveThreadController.INTERVAL, TimeUnit.MILLISECONDS,0);
+        }
     }
 
     /**
@@ -144,7 +563,70 @@ public class FairPoolExecutor<T> {
             return;
         }
         state = State.TERMINATING;
+        stopThreads();
+        if(!discardRemains) {
+            completeRemainingTasks();
+        }
+        state = State.TERMINATED;
+    }
+
+    /**
+     * Terminate the executor gracefully.
+     * The executor stops taking new tasks at once, while all threads keep running the remaining tasks in parallel,
+     * with the order of each producer kept, until no task is left or the timeout elapses.
+     * Tasks still queued after the timeout are discarded.
+     * Warning: once the executor was terminated, it cannot start up again, you must create a new executor if you want to use it.
+     * @param timeout Max time to wait for the remaining tasks, 0 means waiting until all tasks are done.
+     * @param timeUnit Time unit of the timeout.
+     * @return Count of tasks left behind.
+     */
+    public long terminate(long timeout, TimeUnit timeUnit){
+        return terminate(timeout, timeUnit, false);
+    }
+
+    /**
+     * Terminate the executor gracefully, like {@link #terminate(long, TimeUnit)}.
+     * @param acceptDuringDrain {@code true} to keep taking new tasks until the remaining tasks are done or the timeout elapses,
+     *                          for producers which must not lose their tasks while they are shutting down as well.
+     * @return Count of tasks left behind.
+     */
+    public long terminate(long timeout, TimeUnit timeUnit, boolean acceptDuringDrain){
+        if(state == State.TERMINATED || state == State.TERMINATING){
+            return 0;
+        }
+        state = State.TERMINATING;
+        intakeClosed = !acceptDuringDrain;
+        long st = System.nanoTime();
+        long deadline = timeout > 0 ? st + timeUnit.toNanos(timeout) : 0;
+        while(activeUserQueues.sum() > 0 && (deadline == 0 || System.nanoTime() - deadline < 0)){
+            try{
+                Thread.sleep(1);
+            }catch (InterruptedException e){
+                logger.warn("Terminating executor interrupted!",e);
+                break;
+            }
+        }
+        intakeClosed = true;
+        stopThreads();
+        long leftTasks = getEstimatedTaskCount();
+        if(leftTasks > 0){
+            logger.error("Executor {} terminated with {} tasks left behind.", name, leftTasks);
+        } else {
+            logger.info("Executor {} drained in {} ms.", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - st));
+        }
+        state = State.TERMINATED;
+        return leftTasks;
+    }
+
+    /**
+     * Stop the timers and all threads, wait until the running turns end.
+     */
+    private void stopThreads(){
         clearTask.cancel();
+        threadMonitorTask.cancel();
+        if(adaptiveTask != null){
+            adaptiveTask.cancel();
+        }
         for(int i = 0;i<threads.length;i++){
             threads[i].interrupt();
         }
@@ -153,7 +635,7 @@ public class FairPoolExecutor<T> {
             allTerminated = true;
             for(int i = 0;i<threads.length;i++){
                 Thread.State state = threads[i].getState();
-                if(state != Thread.State.TERMINATED){
+                if(state != Thread.State.TERMINATED && state != Thread.State.NEW){
                     allTerminated = false;
                     break;
                 }
@@ -164,31 +646,40 @@ public class FairPoolExecutor<T> {
                 logger.warn("Terminating executor interrupted!",e);
             }
         } while (!allTerminated);
-        if(!discardRemains) {
-            completeRemainingTasks();
+        if(virtualThreadExecutor != null){
+            virtualThreadExecutor.shutdown();
+            try{
+                while(!virtualThreadExecutor.awaitTermination(1, TimeUnit.SECONDS)){
+                    logger.info("Executor {} waiting for {} virtual thread turns.", name, virtualThreadConcurrency - virtualThreadPermits.availablePermits());
+                }
+            } catch (InterruptedException e){
+                logger.warn("Terminating executor interrupted!",e);
+            }
         }
-        state = State.TERMINATED;
     }
 
     /**
      * Complete the remaining tasks with a single thread.
+     * A user queue suspended on an asynchronous task is not in the schedule, it is scheduled again when the stage completes,
+     * so the thread waits until no user queue is active, which may take as long as the stages of the asynchronous tasks.
      */
     private void completeRemainingTasks(){
-        while(!taskSchedule.isEmpty()){
-            try{
-                FairPoolUserQueue<T> userQueue = taskSchedule.poll();
-                if(userQueue != null){
-                    T task = userQueue.takeWork();
-                    try{
-                        handler.execute(task);
-                    } catch (Throwable e){
-                        handler.exceptionCaught(task,e);
-                    } finally {
-                        userQueue.endWork();
+        while(activeUserQueues.sum() > 0){
+            boolean ran = false;
+            for(int i = 0;i<threads.length;i++){
+                try{
+                    FairPoolUserQueue<T> userQueue = scheduler.poll(i);
+                    if(userQueue != null){
+                        ran = true;
+                        runTurn(userQueue);
                     }
+                } catch (Exception e){
+                    logger.error("Uncaught exception while executing!",e);
                 }
-            } catch (Exception e){
-                logger.error("Uncaught exception while executing!",e);
+            }
+            if(!ran){
+                //Only suspended queues are left, wait for their stages.
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
             }
         }
     }
@@ -199,11 +690,204 @@ public class FairPoolExecutor<T> {
      * @param task Task to do
      */
     public void add(Object id, T task) throws IllegalStateException {
-        if(state == State.TERMINATED){
+        add(id, task, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a task with a time to live to executor, task will be put into the tail of the user queue and wait.
+     * If the task is still waiting in the queue when the time to live elapses, it is skipped and passed to
+     * {@link IExecutorHandler#onExpired(Object)} instead of being executed, so an executor falling behind doesn't waste
+     * time on tasks nobody is waiting for any more.
+     * @param id Producer id
+     * @param task Task to do
+     * @param ttl Time to live of the task, 0 means never expiring.
+     * @param timeUnit Time unit of the time to live.
+     */
+    public void add(Object id, T task, long ttl, TimeUnit timeUnit) throws IllegalStateException {
+        if(state == State.TERMINATED || intakeClosed){
             throw new IllegalStateException("Executor is terminated!");
         }
-        FairPoolUserQueue<T> userQueue = this.userTasks.computeIfAbsent(id,key->new FairPoolUserQueue<>(key,this));
-        userQueue.addWork(task);
+        FairPoolUserQueue<T> userQueue = acquireUserQueue(id);
+        try{
+            if((userCapacity > 0 || executorCapacity > 0) && !admit(userQueue)){
+                rejectedCount.increment();
+                handler.rejected(task);
+                return;
+            }
+            userQueue.addWork(task, ttl > 0 ? timeUnit.toNanos(ttl) : 0, getLane(task));
+        } finally {
+            userQueue.release();
+        }
+    }
+
+    /**
+     * Get the user queue of a producer id and pin it, so it is not evicted until {@link FairPoolUserQueue#release()}.
+     */
+    private FairPoolUserQueue<T> acquireUserQueue(Object id){
+        while(true){
+            FairPoolUserQueue<T> userQueue = this.userTasks.computeIfAbsent(id,this::newUserQueue);
+            if(userQueue.acquire()){
+                //The queue may have been evicted and reused for another id after it was got from the map.
+                if(id.equals(userQueue.getId())){
+                    return userQueue;
+                }
+                userQueue.release();
+            }
+            //Evicted but not removed from the map yet.
+            this.userTasks.remove(id, userQueue);
+            Thread.onSpinWait();
+        }
+    }
+
+    private FairPoolUserQueue<T> newUserQueue(Object id){
+        FairPoolUserQueue<T> userQueue = userQueuePool.poll();
+        if(userQueue == null){
+            userQueue = new FairPoolUserQueue<>(id,this);
+        } else {
+            userQueue.reuse(id);
+        }
+        expiryWheel.add(userQueue);
+        return userQueue;
+    }
+
+    /**
+     * Evict an idle user queue and keep it for reuse, called by the expiry wheel.
+     * @return {@code false} if a producer is adding to the queue at the moment.
+     */
+    private boolean evictUserQueue(FairPoolUserQueue<T> userQueue){
+        if(!userQueue.tryRetire()){
+            return false;
+        }
+        this.userTasks.remove(userQueue.getId(), userQueue);
+        userQueuePool.offer(userQueue);
+        return true;
+    }
+
+    /**
+     * Make room for a new task of the user queue according to the reject policy.
+     * @return {@code false} if the task must be rejected.
+     */
+    private boolean admit(FairPoolUserQueue<T> userQueue){
+        if(tryAcquireRoom(userQueue)){
+            return true;
+        }
+        switch (rejectPolicy){
+            case DROP_OLDEST:
+                //The new task takes the place of the oldest one of the same producer, the executor count stays unchanged.
+                return userQueue.requestDropOldest();
+            case BLOCK:
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                long parkNanos = 1000;
+                while(state == State.RUNNABLE && System.nanoTime() - deadline < 0){
+                    LockSupport.parkNanos(this, parkNanos);
+                    if(tryAcquireRoom(userQueue)){
+                        return true;
+                    }
+                    parkNanos = Math.min(parkNanos << 1, TimeUnit.MILLISECONDS.toNanos(1));
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean tryAcquireRoom(FairPoolUserQueue<T> userQueue){
+        if(userCapacity > 0 && userQueue.getLeftTasks() >= userCapacity){
+            return false;
+        }
+        if(executorCapacity > 0){
+            long pending;
+            do{
+                pending = pendingTasks.get();
+                if(pending >= executorCapacity){
+                    return false;
+                }
+            } while (!pendingTasks.compareAndSet(pending, pending + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Start more threads until the count of running threads reaches the target.
+     * @return Count of running threads after growing.
+     */
+    int growThreads(int target){
+        target = Math.min(target, threads.length);
+        int count = activeThreadCount;
+        while(count < target && state == State.RUNNABLE && threads[count].restart()){
+            count++;
+        }
+        activeThreadCount = count;
+        return count;
+    }
+
+    /**
+     * Retire the last running thread, it exits after its current turn.
+     * @return Count of running threads after shrinking.
+     */
+    int shrinkThread(){
+        int count = activeThreadCount;
+        if(count > 1 && state == State.RUNNABLE){
+            count--;
+            activeThreadCount = count;
+            threads[count].retire();
+        }
+        return count;
+    }
+
+    FairPoolThread<T> getThread(int index){
+        return threads[index];
+    }
+
+    int getScheduleQueueDepth(){
+        return scheduler.size();
+    }
+
+    long getBusyNanos(){
+        return busyNanos.sum();
+    }
+
+    void addBusyNanos(long nanos){
+        busyNanos.add(nanos);
+    }
+
+    /**
+     * Called by a user queue when it turns from idle to scheduled.
+     */
+    void userQueueActivated(){
+        activeUserQueues.increment();
+    }
+
+    /**
+     * Called by a user queue when it turns from scheduled to idle.
+     */
+    void userQueueDeactivated(FairPoolUserQueue<T> userQueue){
+        activeUserQueues.decrement();
+        expiryWheel.add(userQueue);
+    }
+
+    /**
+     * Called by a user queue when its oldest task is dropped by {@link RejectPolicy#DROP_OLDEST}.
+     */
+    void taskDropped(T task){
+        rejectedCount.increment();
+        try{
+            handler.rejected(task);
+        } catch (Throwable e){
+            handler.exceptionCaught(task, e);
+        }
+    }
+
+    /**
+     * Called by a worker when the task taken has waited longer than its time to live.
+     */
+    private void taskExpired(T task){
+        expiredCount.increment();
+        try{
+            handler.onExpired(task);
+        } catch (Throwable e){
+            handler.exceptionCaught(task, e);
+        }
     }
 
     /**
@@ -220,12 +904,395 @@ public class FairPoolExecutor<T> {
         return total;
     }
 
-    protected FairPoolUserQueue<T> takeWork() throws InterruptedException{
-        return taskSchedule.take();
+    /**
+     * Run one turn of a scheduled user queue on the current thread.
+     */
+    void runTurn(FairPoolUserQueue<T> userQueue){
+        TURN_QUEUE.set(userQueue);
+        try{
+            if(!userQueue.isSuspended() || runResumes(userQueue)){
+                runTasks(userQueue);
+            }
+        } finally {
+            TURN_QUEUE.set(null);
+        }
+    }
+
+    /**
+     * Run the continuations of the asynchronous task a queue is suspended for.
+     * @return {@code true} if the task has completed and the turn goes on with the tasks of the queue.
+     */
+    private boolean runResumes(FairPoolUserQueue<T> userQueue){
+        Runnable continuation;
+        while((continuation = userQueue.takeResume()) != null){
+            try{
+                continuation.run();
+            } catch (Throwable e){
+                logger.error("Executor {} continuation exception! User: {}.", name, userQueue.getId(), e);
+            }
+        }
+        if(userQueue.tryLeaveSuspension()){
+            return true;
+        }
+        //Must be the last access of the queue in this turn, it may be scheduled again to another worker at once.
+        userQueue.suspend();
+        return false;
+    }
+
+    private void runTasks(FairPoolUserQueue<T> userQueue){
+        int executed = 0;
+        boolean metrics = metricsEnabled;
+        long now = metrics || turnMaxNanos > 0 ? System.nanoTime() : 0;
+        //Deficit round-robin, the queue gets weight times the quantum, minus what it overran in the previous turns.
+        int weight = userQueue.getWeight();
+        long maxTasks = (long) turnMaxTasks * weight;
+        long deadline = turnMaxNanos > 0 ? now + turnMaxNanos * weight + userQueue.getDeficitNanos() : 0;
+        if(metrics && userQueue.getScheduledNanos() != 0){
+            userLag.record(now - userQueue.getScheduledNanos());
+        }
+        boolean drained = false;
+        //Stage of an asynchronous task not completed yet, the queue is suspended until it completes.
+        CompletionStage<?> pending = null;
+        T pendingTask = null;
+        try{
+            if(deadline != 0 && now - deadline >= 0){
+                //Still paying back a long overrun, skip this round.
+                return;
+            }
+            T task;
+            while(true){
+                task = userQueue.takeWork();
+                if(task == null){
+                    drained = true;
+                    break;
+                }
+                if(executorCapacity > 0){
+                    pendingTasks.decrementAndGet();
+                }
+                long taskDeadline = userQueue.getTakenTaskDeadline();
+                if(taskDeadline != 0 && System.nanoTime() - taskDeadline > 0){
+                    //Skipping is cheap, expired tasks don't count in the turn quantum.
+                    taskExpired(task);
+                    continue;
+                }
+                if(metrics && userQueue.getTakenTaskAddNanos() != 0){
+                    queueWait.record(now - userQueue.getTakenTaskAddNanos());
+                }
+                Object batchKey = handler.batchKey(task);
+                CompletionStage<?> stage = null;
+                if(batchKey == null){
+                    executed++;
+                    try{
+                        stage = handler.executeAsync(task);
+                    } catch (Throwable e){
+                        handler.exceptionCaught(task,e);
+                    }
+                } else {
+                    List<T> batch = takeBatch(userQueue, task, batchKey, metrics, now);
+                    executed += batch.size();
+                    try{
+                        stage = handler.executeBatch(batch);
+                    } catch (Throwable e){
+                        handler.exceptionCaught(task,e);
+                    }
+                }
+                if(stage != null){
+                    if(!(stage instanceof CompletableFuture) || !((CompletableFuture<?>) stage).isDone()){
+                        pending = stage;
+                        pendingTask = task;
+                        break;
+                    }
+                    if(((CompletableFuture<?>) stage).isCompletedExceptionally()){
+                        T failedTask = task;
+                        stage.whenComplete((result, cause) -> handler.exceptionCaught(failedTask, cause));
+                    }
+                }
+                if(metrics || deadline != 0){
+                    long end = System.nanoTime();
+                    if(metrics){
+                        serviceTime.record(end - now);
+                    }
+                    now = end;
+                }
+                if(executed >= maxTasks || (deadline != 0 && now - deadline >= 0)){
+                    break;
+                }
+            }
+        } finally {
+            if(deadline != 0){
+                //Only the overrun is carried, and an emptied queue starts over.
+                userQueue.setDeficitNanos(drained ? 0 : Math.min(deadline - now, 0));
+            }
+            turnCount.increment();
+            executedTaskCount.add(executed);
+            userQueue.addServedTasks(executed);
+            if(pending == null){
+                userQueue.endWork();
+            } else {
+                //Must be the last accesses of the queue in this turn, it may be scheduled again to another worker at once.
+                userQueue.suspend();
+                resumeOnCompletion(userQueue, pending, pendingTask);
+            }
+        }
+    }
+
+    /**
+     * End the suspension of a user queue when the stage of its asynchronous task completes.
+     * The thread completing the stage only schedules the queue, the tasks go on in a worker.
+     */
+    private void resumeOnCompletion(FairPoolUserQueue<T> userQueue, CompletionStage<?> pending, T task){
+        pending.whenComplete((result, cause) -> {
+            if(cause != null){
+                handler.exceptionCaught(task, cause);
+            }
+            userQueue.endSuspension();
+        });
+    }
+
+    /**
+     * Get an executor running commands on a worker in the turns of the producer whose task is running on the current thread,
+     * before the following tasks of the producer.
+     * An asynchronous task passes its continuations to it, so that they never run in the thread completing its stage,
+     * which is usually an IO thread of a client. Must be called by a task executed by {@link IExecutorHandler#executeAsync(Object)},
+     * and the continuations must be added before the stage returned by the task completes.
+     * @throws IllegalStateException Throws if the current thread is not running a turn of an executor
+     */
+    public static Executor resumeExecutor() throws IllegalStateException {
+        FairPoolUserQueue<?> userQueue = TURN_QUEUE.get();
+        if(userQueue == null){
+            throw new IllegalStateException("Not running a task of an executor!");
+        }
+        return userQueue::resume;
+    }
+
+    /**
+     * Take the following tasks of the same batch key at the head of the user queue, up to {@link #MAX_BATCH_SIZE}.
+     * Coalescing stops at the first task of another key, so the order of the producer is kept.
+     * @param first The task already taken.
+     */
+    private List<T> takeBatch(FairPoolUserQueue<T> userQueue, T first, Object batchKey, boolean metrics, long now){
+        List<T> batch = new ArrayList<>();
+        batch.add(first);
+        T next;
+        while(batch.size() < MAX_BATCH_SIZE && (next = userQueue.peekWork()) != null && batchKey.equals(handler.batchKey(next))){
+            userQueue.takePeekedWork();
+            if(executorCapacity > 0){
+                pendingTasks.decrementAndGet();
+            }
+            long taskDeadline = userQueue.getTakenTaskDeadline();
+            if(taskDeadline != 0 && System.nanoTime() - taskDeadline > 0){
+                taskExpired(next);
+                continue;
+            }
+            if(metrics && userQueue.getTakenTaskAddNanos() != 0){
+                queueWait.record(now - userQueue.getTakenTaskAddNanos());
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * Whether the turns are run on virtual threads rather than the worker threads.
+     */
+    boolean isVirtualThreadMode(){
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * Run one turn of a scheduled user queue on a virtual thread, wait while the concurrency limit is reached.
+     */
+    void dispatchToVirtualThread(FairPoolUserQueue<T> userQueue){
+        virtualThreadPermits.acquireUninterruptibly();
+        try{
+            virtualThreadExecutor.execute(()->{
+                try{
+                    runVirtualTurn(userQueue);
+                } finally {
+                    virtualThreadPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e){
+            virtualThreadPermits.release();
+            runVirtualTurn(userQueue);
+        }
+    }
+
+    private void runVirtualTurn(FairPoolUserQueue<T> userQueue){
+        Thread thread = Thread.currentThread();
+        virtualTurnStarts.put(thread, System.currentTimeMillis());
+        try{
+            runTurn(userQueue);
+        } finally {
+            virtualTurnStarts.remove(thread);
+        }
+    }
+
+    private ExecutorService newVirtualThreadExecutor(){
+        try{
+            //Looked up by reflection, so the framework still compiles and runs on JDKs without virtual threads.
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e){
+            logger.warn("Virtual threads not supported, executor {} runs turns on platform threads.", name);
+            return Executors.newCachedThreadPool(runnable->{
+                Thread thread = new Thread(runnable);
+                thread.setName(String.format("%s-turn-%d", name, thread.getId()));
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Take a scheduled user queue for the worker, park the worker until there is one.
+     */
+    protected FairPoolUserQueue<T> takeWork(FairPoolThread<T> worker) throws InterruptedException{
+        FairPoolUserQueue<T> userQueue = scheduler.poll(worker.getIndex());
+        if(userQueue == null && waitStrategy != WaitStrategy.PARK){
+            userQueue = spinForWork(worker);
+        }
+        while(userQueue == null && (userQueue = scheduler.poll(worker.getIndex())) == null){
+            worker.markParked();
+            parkedCount.incrementAndGet();
+            //Poll again after marking, a producer scheduling before the mark could not see the worker parked.
+            userQueue = scheduler.poll(worker.getIndex());
+            if(userQueue == null){
+                LockSupport.park(this);
+            }
+            if(worker.clearParked()){
+                parkedCount.decrementAndGet();
+            }
+            if(userQueue != null){
+                return userQueue;
+            }
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            if(worker.isRetired()){
+                return null;
+            }
+        }
+        return userQueue;
+    }
+
+    /**
+     * Poll for work without parking, within the spin budgets or forever for {@link WaitStrategy#BUSY_SPIN}.
+     * @return null if nothing is found within the budgets, or the worker is retired.
+     */
+    private FairPoolUserQueue<T> spinForWork(FairPoolThread<T> worker) throws InterruptedException {
+        boolean busySpin = waitStrategy == WaitStrategy.BUSY_SPIN;
+        FairPoolUserQueue<T> userQueue = null;
+        spinningCount.incrementAndGet();
+        try{
+            for(int tries = 0; busySpin || tries < spinTries + yieldTries; tries++){
+                userQueue = scheduler.poll(worker.getIndex());
+                if(userQueue != null){
+                    break;
+                }
+                if(busySpin || tries < spinTries){
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                if((tries & 0x3FF) == 0x3FF){
+                    if(Thread.interrupted()){
+                        throw new InterruptedException();
+                    }
+                    if(worker.isRetired()){
+                        return null;
+                    }
+                }
+            }
+        } finally {
+            //Stop spinning before parking, the park loop polls again after marking so no signal is lost in between.
+            spinningCount.decrementAndGet();
+        }
+        if(userQueue != null && scheduler.size() > 0){
+            //Producers skipped waking anyone while this worker was spinning, pass the remaining work on.
+            signalWork(-1);
+        }
+        return userQueue;
     }
 
     protected void scheduleWork(FairPoolUserQueue<T> userQueue){
-        taskSchedule.add(userQueue);
+        userQueue.setScheduledNanos(metricsEnabled ? System.nanoTime() : 0);
+        int target = scheduler.schedule(userQueue, FairPoolThread.current(this));
+        signalWork(target);
+    }
+
+    /**
+     * Wake up a parked worker if there is any.
+     * @param target Index of the worker to wake up, or -1 for any worker
+     */
+    private void signalWork(int target){
+        if(target < 0 && spinningCount.get() > 0){
+            //A spinning worker takes it without the cost of a wake-up.
+            return;
+        }
+        if(parkedCount.get() > 0){
+            if(target >= 0){
+                if(threads[target].unpark()){
+                    parkedCount.decrementAndGet();
+                }
+                return;
+            }
+            for(int i = 0;i<threads.length;i++){
+                if(threads[i].unpark()){
+                    parkedCount.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * What the executor does with a new task while the queue of its producer or the whole executor is full.
+     * Rejected and dropped tasks are passed to {@link IExecutorHandler#rejected(Object)}.
+     */
+    public enum RejectPolicy {
+        /** Reject the new task. */
+        REJECT,
+        /**
+         * Drop the oldest queued task in the lowest priority lane of the same producer and accept the new one, reject if the producer has nothing queued.
+         * The task is dropped by the worker on its next take, while the worker falls behind the pending drops are capped at the live tasks and new tasks are rejected beyond.
+         */
+        DROP_OLDEST,
+        /** Block the producer until there is room or the block timeout elapses, then reject. Never use it on a Netty event loop. */
+        BLOCK
+    }
+
+    /**
+     * How scheduled user queues are dispatched to the worker threads
+     */
+    public enum ScheduleMode {
+        /** All workers share one schedule queue, strict round-robin between user queues. */
+        GLOBAL,
+        /** Every worker owns a deque, a rescheduled user queue stays on the same worker and idle workers steal from busy ones. */
+        WORK_STEALING,
+        /** Every producer id is bound to a fixed worker by hash, fairness only applies between producers on the same worker. */
+        SHARDED
+    }
+
+    /**
+     * How workers choose between the priority lanes, see {@link #setLanes(int, ToIntFunction, LanePolicy, int...)}.
+     */
+    public enum LanePolicy {
+        /** Higher lanes always first, lower lanes may starve while higher lanes keep busy. */
+        STRICT,
+        /** Lanes share the turns by weight, higher lanes are served first only when the chosen lane is empty. */
+        WEIGHTED
+    }
+
+    /**
+     * How idle workers wait for new work, in the style of the Disruptor wait strategies.
+     */
+    public enum WaitStrategy {
+        /** Park at once, wake-ups cost a system call but idle workers use no CPU. */
+        PARK,
+        /** Busy-spin, then yield, then park, within the spin budgets. Low wake-up latency after short idle periods at a moderate CPU cost. */
+        SPIN_THEN_PARK,
+        /** Busy-spin forever, the lowest latency, but every idle worker keeps a CPU core busy. Only for dedicated cores. */
+        BUSY_SPIN
     }
 
     /**
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import pers.winter.framework.monitor.LatencyHistogram;
+
+/**
+ * A snapshot of the metrics of a {@link FairPoolExecutor}.
+ * Queue wait tells how long tasks wait in total, user lag tells how much of it is spent waiting for other users,
+ * and service time tells how long the handler takes. Latencies are in nanoseconds.
+ * @author Winter
+ */
+public class FairPoolStatistics {
+    private final String executorName;
+    private final int threadCount;
+    private final long activeUserQueues;
+    private final int scheduleQueueDepth;
+    private final long turnCount;
+    private final long executedTaskCount;
+    private final long rejectedCount;
+    private final long expiredCount;
+    private final double fairnessIndex;
+    private final LatencyHistogram.Snapshot queueWait;
+    private final LatencyHistogram.Snapshot serviceTime;
+    private final LatencyHistogram.Snapshot userLag;
+
+    FairPoolStatistics(String executorName, int threadCount, long activeUserQueues, int scheduleQueueDepth, long turnCount,
+                       long executedTaskCount, long rejectedCount, long expiredCount, double fairnessIndex, LatencyHistogram.Snapshot queueWait,
+                       LatencyHistogram.Snapshot serviceTime, LatencyHistogram.Snapshot userLag){
+        this.executorName = executorName;
+        this.threadCount = threadCount;
+        this.activeUserQueues = activeUserQueues;
+        this.scheduleQueueDepth = scheduleQueueDepth;
+        this.turnCount = turnCount;
+        this.executedTaskCount = executedTaskCount;
+        this.rejectedCount = rejectedCount;
+        this.expiredCount = expiredCount;
+        this.fairnessIndex = fairnessIndex;
+        this.queueWait = queueWait;
+        this.serviceTime = serviceTime;
+        this.userLag = userLag;
+    }
+    public String getExecutorName(){return executorName;}
+    public int getThreadCount(){return threadCount;}
+    /**
+     * Count of user queues which have tasks queued or running.
+     */
+    public long getActiveUserQueues(){return activeUserQueues;}
+    /**
+     * Count of user queues waiting in the schedule for a thread.
+     */
+    public int getScheduleQueueDepth(){return scheduleQueueDepth;}
+    public long getTurnCount(){return turnCount;}
+    public long getExecutedTaskCount(){return executedTaskCount;}
+    public long getRejectedCount(){return rejectedCount;}
+    public long getExpiredCount(){return expiredCount;}
+    /**
+     * Jain's fairness index of the tasks executed per producer weight, see {@link FairPoolExecutor#setWeightResolver(java.util.function.ToIntFunction)}.
+     * 1 means every producer got exactly its weighted share.
+     */
+    public double getFairnessIndex(){return fairnessIndex;}
+    /**
+     * Time from adding a task to starting it.
+     */
+    public LatencyHistogram.Snapshot getQueueWait(){return queueWait;}
+    /**
+     * Time of running a task in the handler.
+     */
+    public LatencyHistogram.Snapshot getServiceTime(){return serviceTime;}
+    /**
+     * Time a user queue with tasks waits in the schedule before its turn, the p99 of it is the per-user lag.
+     */
+    public LatencyHistogram.Snapshot getUserLag(){return userLag;}
+    @Override
+    public String toString(){
+        return String.format("%s: threads=%d, activeUserQueues=%d, scheduleQueueDepth=%d, turns=%d, tasks=%d, rejected=%d, expired=%d, fairness=%.3f, queueWait[%s], serviceTime[%s], userLag[%s]",
+                executorName, threadCount, activeUserQueues, scheduleQueueDepth, turnCount, executedTaskCount, rejectedCount, expiredCount, fairnessIndex, queueWait, serviceTime, userLag);
+    }
+}
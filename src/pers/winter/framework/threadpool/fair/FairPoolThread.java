@@ -17,7 +17,8 @@ package pers.winter.framework.threadpool.fair;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import pers.winter.framework.threadpool.IExecutorHandler;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Worker thread of {@link FairPoolExecutor}, based on Java thread.
@@ -26,17 +27,21 @@ import pers.winter.framework.threadpool.IExecutorHandler;
  */
 public class FairPoolThread<T> implements Thread.UncaughtExceptionHandler, Runnable {
     private static final Logger logger = LogManager.getLogger(FairPoolThread.class);
+    private static final ThreadLocal<FairPoolThread<?>> CURRENT = new ThreadLocal<>();
     private Thread thread;
     private volatile boolean interrupted = false;
+    //Set when the executor shrinks, the thread exits after its current turn.
+    private volatile boolean retired = false;
     private String name;
+    private final int index;
     private final FairPoolExecutor<T> boss;
-    private IExecutorHandler<T> handler;
     private long recentStartWork;
+    private final AtomicBoolean parked = new AtomicBoolean(false);
 
-    public FairPoolThread(String name, FairPoolExecutor<T> boss, IExecutorHandler<T> handler){
+    public FairPoolThread(String name, int index, FairPoolExecutor<T> boss){
         this.name = name;
+        this.index = index;
         this.boss = boss;
-        this.handler = handler;
         initThread();
     }
 
@@ -44,6 +49,22 @@ public class FairPoolThread<T> implements Thread.UncaughtExceptionHandler, Runna
         return name;
     }
 
+    /**
+     * Index of the thread in the executor.
+     */
+    public int getIndex(){
+        return index;
+    }
+
+    /**
+     * Get the worker running on the current thread, or null if the current thread is not a worker of the executor.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> FairPoolThread<T> current(FairPoolExecutor<T> boss){
+        FairPoolThread<?> current = CURRENT.get();
+        return current != null && current.boss == boss ? (FairPoolThread<T>) current : null;
+    }
+
     /**
      * Start the thread.
      */
@@ -60,6 +81,39 @@ public class FairPoolThread<T> implements Thread.UncaughtExceptionHandler, Runna
         this.thread.interrupt();
     }
 
+    /**
+     * Ask the thread to exit after its current turn, used when the executor shrinks.
+     */
+    void retire(){
+        retired = true;
+        LockSupport.unpark(thread);
+    }
+
+    boolean isRetired(){
+        return retired;
+    }
+
+    /**
+     * Start the thread again after it was retired or if it has never started, used when the executor grows.
+     * @return {@code false} if the previous thread is still running its last turn.
+     */
+    boolean restart(){
+        if(thread.isAlive()){
+            return false;
+        }
+        retired = false;
+        initThread();
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Id of the running Java thread.
+     */
+    long getThreadId(){
+        return thread.getId();
+    }
+
     /**
      * Get the state of thread.
      */
@@ -72,20 +126,55 @@ public class FairPoolThread<T> implements Thread.UncaughtExceptionHandler, Runna
      */
     public long getRecentStartWork() { return recentStartWork;}
 
+    /**
+     * Mark the thread as parked, called by the thread itself before it parks.
+     */
+    void markParked(){
+        parked.set(true);
+    }
+
+    /**
+     * Clear the parked mark, called by the thread itself after it wakes up.
+     * @return {@code true} if the mark was still set, which means no one has unparked the thread.
+     */
+    boolean clearParked(){
+        return parked.compareAndSet(true, false);
+    }
+
+    /**
+     * Unpark the thread if it is parked.
+     * @return {@code true} if the thread was parked and is woken up by this call.
+     */
+    boolean unpark(){
+        if(parked.get() && parked.compareAndSet(true, false)){
+            LockSupport.unpark(thread);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void run() {
-        while(!interrupted){
+        CURRENT.set(this);
+        while(!interrupted && !retired){
             try {
-                FairPoolUserQueue<T> userQueue = boss.takeWork();
-                T task = userQueue.takeWork();
+                FairPoolUserQueue<T> userQueue = boss.takeWork(this);
+                if(userQueue == null){
+                    continue;
+                }
+                if(boss.isVirtualThreadMode()){
+                    boss.dispatchToVirtualThread(userQueue);
+                    continue;
+                }
+                long st = boss.isAdaptiveThreads() ? System.nanoTime() : 0;
                 try{
                     recentStartWork = System.currentTimeMillis();
-                    handler.execute(task);
-                }catch (Throwable e){
-                    handler.exceptionCaught(task,e);
+                    boss.runTurn(userQueue);
                 } finally {
                     recentStartWork = 0;
-                    userQueue.endWork();
+                    if(st != 0){
+                        boss.addBusyNanos(System.nanoTime() - st);
+                    }
                 }
             } catch (InterruptedException e) {
                 logger.info("Thread {} interrupted!",Thread.currentThread().getName());
@@ -96,7 +185,7 @@ public class FairPoolThread<T> implements Thread.UncaughtExceptionHandler, Runna
     @Override
     public void uncaughtException(Thread t, Throwable e) {
         logger.error("Uncaught exception while executing! Thread: {}",this.name,e);
-        if(!interrupted){
+        if(!interrupted && !retired){
             initThread();
             this.thread.start();
         }
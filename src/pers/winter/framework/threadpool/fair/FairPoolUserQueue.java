@@ -15,85 +15,433 @@
  */
 package pers.winter.framework.threadpool.fair;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Task queue in the fair pool executor, caches the tasks of one producer.
+ * Tasks are kept in a lock-free MPSC queue, and the queue is put into the executor schedule at most once at a time,
+ * guarded by an atomic IDLE/SCHEDULED state.
+ * With priority lanes, every lane has its own MPSC queue, the worker always takes from the highest priority lane first.
+ * Queues idle for long are evicted and recycled for new producer ids, producers pin the queue while adding so a queue
+ * is never recycled under them.
  * @param <T> Class type for the tasks
  * @author Winter
  */
 public class FairPoolUserQueue<T> {
-    private final Object id;
-    private volatile Queue<T> tasks = new LinkedList<>();
-    private ReentrantLock lock = new ReentrantLock();
-    private boolean isIdle = true;
-    private long activeTs;
-    private FairPoolExecutor boss;
-    public FairPoolUserQueue(Object id, FairPoolExecutor boss){
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    //Waiting for the stage of an asynchronous task, only scheduled for its continuations.
+    private static final int SUSPENDED = 2;
+    private static final int RETIRED = -1;
+    private volatile Object id;
+    //Count of producers adding to the queue, or RETIRED once the queue is evicted and waits to be reused.
+    private final AtomicInteger producers = new AtomicInteger();
+    //Whether the queue is in a bucket of the idle expiry wheel, and the link to the next queue in the same bucket.
+    private final AtomicBoolean inExpiryBucket = new AtomicBoolean();
+    private FairPoolUserQueue<T> nextInBucket;
+    //One queue per priority lane, lane 0 first.
+    private final MpscLinkedQueue<T>[] lanes;
+    //Lane of the task returned by the last take, worker only.
+    private int takenLane;
+    //Lane of the task returned by the last peek, worker only.
+    private int peekedLane;
+    //Lane of the schedule the queue is put into, which is the highest priority lane with tasks.
+    private int scheduleLane;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    //Continuations of the asynchronous task the queue is suspended for, run by the worker before the other tasks.
+    private final MpscLinkedQueue<Runnable> resumes = new MpscLinkedQueue<>();
+    //Whether the queue is suspended, only accessed by the worker which owns the scheduled queue.
+    private boolean suspended;
+    //Set when the stage of the asynchronous task completes, the suspension ends in the next turn.
+    private volatile boolean suspensionEnded;
+    //Count of oldest tasks to be dropped by the worker, producers cannot remove tasks from the queue themselves.
+    private final AtomicInteger dropRequests = new AtomicInteger();
+    private volatile long activeTs;
+    //System.nanoTime() when the queue was put into the schedule, only set while the executor collects metrics.
+    private long scheduledNanos;
+    //Share of the queue in a round of the deficit round-robin, the queue runs weight times the turn quantum in a turn.
+    private volatile int weight;
+    //Time the queue overran its previous turns, paid back from the next turns, worker only.
+    private long deficitNanos;
+    //Count of tasks executed, only written by the worker which owns the scheduled queue.
+    private volatile long servedTasks;
+    //servedTasks at the last statistics snapshot.
+    private long servedAtSnapshot;
+    private final FairPoolExecutor<T> boss;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public FairPoolUserQueue(Object id, FairPoolExecutor<T> boss){
         this.id = id;
         this.boss = boss;
+        this.weight = boss.resolveWeight(id);
+        this.activeTs = System.currentTimeMillis();
+        this.lanes = new MpscLinkedQueue[boss.getLaneCount()];
+        for(int i = 0;i < lanes.length;i++){
+            lanes[i] = new MpscLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Pin the queue before adding tasks, so it is not evicted meanwhile.
+     * @return {@code false} if the queue is already evicted, the producer must get the queue of its id again.
+     */
+    boolean acquire(){
+        int count;
+        do{
+            count = producers.get();
+            if(count == RETIRED){
+                return false;
+            }
+        } while (!producers.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    void release(){
+        producers.decrementAndGet();
+    }
+
+    /**
+     * Retire the queue for eviction if no producer is adding and it has no task, not scheduled or running.
+     */
+    boolean tryRetire(){
+        if(!producers.compareAndSet(0, RETIRED)){
+            return false;
+        }
+        //No producer can add any more, check the queue is really empty, a worker may be just ending a turn.
+        if(state.get() != IDLE || getQueuedTasks() > 0){
+            producers.set(0);
+            return false;
+        }
+        return true;
+    }
+
+    boolean isRetired(){
+        return producers.get() == RETIRED;
+    }
+
+    /**
+     * Bind a retired queue to a new producer id, the queue must be empty.
+     */
+    void reuse(Object id){
+        this.id = id;
+        this.weight = boss.resolveWeight(id);
+        this.deficitNanos = 0;
+        this.servedTasks = 0;
+        this.servedAtSnapshot = 0;
+        this.activeTs = System.currentTimeMillis();
+        //Publish the new id before producers can pin the queue.
+        producers.set(0);
+    }
+
+    boolean markInExpiryBucket(){
+        return !inExpiryBucket.get() && inExpiryBucket.compareAndSet(false, true);
+    }
+
+    void clearInExpiryBucket(){
+        inExpiryBucket.set(false);
+    }
+
+    FairPoolUserQueue<T> getNextInBucket(){
+        return nextInBucket;
+    }
+
+    void setNextInBucket(FairPoolUserQueue<T> nextInBucket){
+        this.nextInBucket = nextInBucket;
     }
 
     /**
-     * Take a task
+     * Take a task, only called by the worker which owns the scheduled queue.
      */
     public T takeWork(){
-        lock.lock();
-        try{
-            T work = tasks.poll();
-            return work;
-        } finally {
-            lock.unlock();
+        while(dropRequests.get() > 0){
+            T dropped = pollLowestLane();
+            if(dropped == null){
+                break;
+            }
+            dropRequests.decrementAndGet();
+            boss.taskDropped(dropped);
         }
+        return pollLanes();
+    }
+
+    /**
+     * Look at the next task without taking it, only called by the worker which owns the scheduled queue.
+     * @return The next task, or null if there is none or some tasks are to be dropped first.
+     */
+    T peekWork(){
+        if(dropRequests.get() > 0){
+            return null;
+        }
+        for(int i = 0;i < lanes.length;i++){
+            T task = lanes[i].peek();
+            if(task != null){
+                peekedLane = i;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the task returned by the last {@link #peekWork()}, even if a task of a higher lane is added meanwhile.
+     */
+    T takePeekedWork(){
+        takenLane = peekedLane;
+        return lanes[peekedLane].poll();
+    }
+
+    private T pollLanes(){
+        for(int i = 0;i < lanes.length;i++){
+            T task = lanes[i].poll();
+            if(task != null){
+                takenLane = i;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Poll the oldest task of the lowest priority lane with tasks, which is the one to drop first. Worker only.
+     */
+    private T pollLowestLane(){
+        for(int i = lanes.length - 1;i >= 0;i--){
+            T task = lanes[i].poll();
+            if(task != null){
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Highest priority lane with tasks, or -1 if the queue is empty. Worker only.
+     */
+    private int firstNonEmptyLane(){
+        for(int i = 0;i < lanes.length;i++){
+            if(!lanes[i].isEmpty()){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ask the worker to drop the oldest task of the lowest priority lane with tasks, which is done on its next take.
+     * The pending drops are capped at the live tasks, so the queue never grows beyond twice its capacity while the worker is stalled.
+     * @return {@code false} if there is no task left to drop, or the worker is too far behind.
+     */
+    boolean requestDropOldest(){
+        int drops;
+        do{
+            drops = dropRequests.get();
+            if(getQueuedTasks() <= drops << 1){
+                return false;
+            }
+        } while(!dropRequests.compareAndSet(drops, drops + 1));
+        return true;
     }
 
     /**
      * Add a new task into the queue
      */
-    @SuppressWarnings("unchecked")
     public void addWork(T task){
-        lock.lock();
-        try{
-            tasks.add(task);
-            activeTs = System.currentTimeMillis();
-            if(isIdle){
-                boss.scheduleWork(this);
-                isIdle = false;
-            }
-        } finally {
-            lock.unlock();
+        addWork(task, 0, boss.getLane(task));
+    }
+
+    /**
+     * Add a new task into a lane of the queue, which expires after the time to live.
+     * @param ttlNanos Time to live in nanoseconds, 0 means never expiring.
+     * @param lane Priority lane of the task.
+     */
+    void addWork(T task, long ttlNanos, int lane){
+        if(ttlNanos <= 0){
+            lanes[lane].offer(task, boss.isMetricsEnabled() ? System.nanoTime() : 0);
+        } else {
+            long now = System.nanoTime();
+            lanes[lane].offer(task, boss.isMetricsEnabled() ? now : 0, now + ttlNanos);
+        }
+        scheduleIfIdle(lane);
+    }
+
+    private void scheduleIfIdle(int lane){
+        activeTs = System.currentTimeMillis();
+        if(state.get() == IDLE && state.compareAndSet(IDLE, SCHEDULED)){
+            scheduleLane = lane;
+            boss.userQueueActivated();
+            boss.scheduleWork(this);
         }
     }
 
+    /**
+     * System.nanoTime() when the task returned by the last take was added, 0 if the executor does not collect metrics.
+     */
+    long getTakenTaskAddNanos(){
+        return lanes[takenLane].getPolledTimestamp();
+    }
+
+    /**
+     * System.nanoTime() after which the task returned by the last take expires, 0 if it never expires.
+     */
+    long getTakenTaskDeadline(){
+        return lanes[takenLane].getPolledDeadline();
+    }
+
+    public int getWeight(){
+        return weight;
+    }
+
+    void setWeight(int weight){
+        this.weight = Math.max(weight, 1);
+    }
+
+    long getDeficitNanos(){
+        return deficitNanos;
+    }
+
+    void setDeficitNanos(long deficitNanos){
+        this.deficitNanos = deficitNanos;
+    }
+
+    /**
+     * Count the tasks executed in a turn, worker only.
+     */
+    void addServedTasks(int count){
+        if(count > 0){
+            servedTasks += count;
+        }
+    }
+
+    /**
+     * Count of tasks executed since the previous call, only called by the statistics.
+     */
+    long takeServedSinceSnapshot(boolean reset){
+        long served = servedTasks;
+        long delta = served - servedAtSnapshot;
+        if(reset){
+            servedAtSnapshot = served;
+        }
+        return delta;
+    }
+
+    /**
+     * Lane of the schedule the queue is put into.
+     */
+    int getScheduleLane(){
+        return scheduleLane;
+    }
+
+    long getScheduledNanos(){
+        return scheduledNanos;
+    }
+
+    void setScheduledNanos(long scheduledNanos){
+        this.scheduledNanos = scheduledNanos;
+    }
+
     /**
      * Notify the queue when the worker thread completes the previous work.
      */
-    @SuppressWarnings("unchecked")
     public void endWork(){
-        lock.lock();
-        try{
-            if(tasks.isEmpty()){
-                isIdle = true;
-            } else {
-                activeTs = System.currentTimeMillis();
-                boss.scheduleWork(this);
-            }
-        } finally {
-            lock.unlock();
+        state.set(IDLE);
+        //A producer may have added a task after the previous take but failed to schedule because the state was SCHEDULED.
+        int lane = firstNonEmptyLane();
+        if(lane >= 0 && state.compareAndSet(IDLE, SCHEDULED)){
+            activeTs = System.currentTimeMillis();
+            scheduleLane = lane;
+            boss.scheduleWork(this);
+        } else {
+            boss.userQueueDeactivated(this);
         }
     }
 
+    /**
+     * Suspend the queue at the end of a turn whose asynchronous task has not completed. Worker only.
+     * The tasks of the queue wait until {@link #endSuspension()}, but the queue is still scheduled for its continuations.
+     */
+    void suspend(){
+        suspended = true;
+        state.set(SUSPENDED);
+        //A continuation or the end may have come during the turn, when the state was still SCHEDULED.
+        if((resumes.size() > 0 || suspensionEnded) && state.compareAndSet(SUSPENDED, SCHEDULED)){
+            scheduleSuspended();
+        }
+    }
+
+    boolean isSuspended(){
+        return suspended;
+    }
+
+    /**
+     * Add a continuation of the asynchronous task, run by a worker in the next turn of the queue. Called by any thread.
+     */
+    void resume(Runnable continuation){
+        resumes.offer(continuation);
+        if(state.get() == SUSPENDED && state.compareAndSet(SUSPENDED, SCHEDULED)){
+            scheduleSuspended();
+        }
+    }
+
+    /**
+     * Take a continuation, only called by the worker which owns the scheduled queue.
+     */
+    Runnable takeResume(){
+        return resumes.poll();
+    }
+
+    /**
+     * Notify the queue when the stage of its asynchronous task completes. Called by any thread.
+     */
+    void endSuspension(){
+        suspensionEnded = true;
+        if(state.get() == SUSPENDED && state.compareAndSet(SUSPENDED, SCHEDULED)){
+            scheduleSuspended();
+        }
+    }
+
+    /**
+     * Leave the suspension if it has ended, only called by the worker which owns the scheduled queue.
+     * @return {@code false} if the asynchronous task has not completed, the queue must be suspended again.
+     */
+    boolean tryLeaveSuspension(){
+        if(!suspensionEnded){
+            return false;
+        }
+        suspensionEnded = false;
+        suspended = false;
+        return true;
+    }
+
+    private void scheduleSuspended(){
+        //Continuations carry on the task already taken, they go before the tasks of any lane.
+        scheduleLane = 0;
+        boss.scheduleWork(this);
+    }
+
+    /**
+     * Producer id of the queue
+     */
+    public Object getId(){
+        return id;
+    }
+
     public int getLeftTasks(){
-        return this.tasks.size();
+        return getQueuedTasks() - dropRequests.get();
+    }
+
+    private int getQueuedTasks(){
+        int size = 0;
+        for(int i = 0;i < lanes.length;i++){
+            size += lanes[i].size();
+        }
+        return size;
     }
 
     /**
      * Whether the queue is empty && not in schedule
      */
     public boolean isIdle(){
-        return this.isIdle;
+        return state.get() == IDLE;
     }
 
     /**
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * All workers share one FIFO schedule queue, user queues are served in strict round-robin order.
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+class GlobalQueueScheduler<T> implements IFairPoolScheduler<T> {
+    private final ConcurrentLinkedQueue<FairPoolUserQueue<T>> taskSchedule = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public int schedule(FairPoolUserQueue<T> userQueue, FairPoolThread<T> current) {
+        taskSchedule.offer(userQueue);
+        return -1;
+    }
+
+    @Override
+    public FairPoolUserQueue<T> poll(int workerIndex) {
+        return taskSchedule.poll();
+    }
+
+    @Override
+    public int size() {
+        return taskSchedule.size();
+    }
+}
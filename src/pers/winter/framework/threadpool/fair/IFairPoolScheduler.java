@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+/**
+ * Decides which worker of a {@link FairPoolExecutor} runs a scheduled user queue next.
+ * A user queue is scheduled at most once at a time, so the scheduler never sees the same queue twice before it is polled.
+ * Implementations must be non-blocking, waiting for work is done by the executor.
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+interface IFairPoolScheduler<T> {
+    /**
+     * Put a user queue which has tasks into the schedule.
+     * @param userQueue The user queue to schedule
+     * @param current The worker calling this method, or null if called by a producer thread
+     * @return Index of the only worker which can poll the user queue, or -1 if any worker can
+     */
+    int schedule(FairPoolUserQueue<T> userQueue, FairPoolThread<T> current);
+
+    /**
+     * Poll the next user queue for a worker.
+     * @param workerIndex Index of the worker polling
+     * @return The next user queue, or null if there is nothing to do
+     */
+    FairPoolUserQueue<T> poll(int workerIndex);
+
+    /**
+     * Estimated count of scheduled user queues.
+     */
+    int size();
+}
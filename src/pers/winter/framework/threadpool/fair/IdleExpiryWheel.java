@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A timing wheel of idle user queues, so evicting idle queues only looks at the queues which went idle an expire time ago
+ * rather than scanning all queues.
+ * A queue is put into the bucket of the tick it went idle in, at most one bucket at a time, and every bucket is an
+ * intrusive lock-free stack linked through the queues, so adding costs no allocation.
+ * Expiring is done by a single timer thread, it takes away a whole bucket once the bucket is an expire time old.
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+class IdleExpiryWheel<T> {
+    private final long expireMillis;
+    private final long tickMillis;
+    private final AtomicReferenceArray<FairPoolUserQueue<T>> buckets;
+    //Last tick whose bucket has been expired, timer thread only.
+    private long expiredTick;
+
+    IdleExpiryWheel(long expireMillis, long tickMillis){
+        this.expireMillis = expireMillis;
+        this.tickMillis = tickMillis;
+        //One more bucket for the current tick and one for the tick being expired.
+        this.buckets = new AtomicReferenceArray<>((int) (expireMillis / tickMillis) + 2);
+        this.expiredTick = (System.currentTimeMillis() - expireMillis) / tickMillis;
+    }
+
+    long getTickMillis(){
+        return tickMillis;
+    }
+
+    /**
+     * Put a queue into the bucket of its last active time, nothing is done if it is already in a bucket. Can be called by any thread.
+     */
+    void add(FairPoolUserQueue<T> userQueue){
+        if(userQueue.markInExpiryBucket()){
+            push(userQueue, userQueue.getActiveTs() / tickMillis);
+        }
+    }
+
+    private void push(FairPoolUserQueue<T> userQueue, long tick){
+        int index = (int) (tick % buckets.length());
+        FairPoolUserQueue<T> head;
+        do{
+            head = buckets.get(index);
+            userQueue.setNextInBucket(head);
+        } while (!buckets.compareAndSet(index, head, userQueue));
+    }
+
+    /**
+     * Expire the buckets which have become an expire time old since the previous call. Timer thread only.
+     * A queue active again since it was put into the bucket is moved to the bucket of its new active time,
+     * a queue still scheduled is dropped from the wheel, it comes back when it goes idle.
+     * @param evictor Evicts an idle queue, returns {@code false} if the queue cannot be evicted at the moment.
+     * @return Count of queues evicted.
+     */
+    int expire(Predicate<FairPoolUserQueue<T>> evictor){
+        long now = System.currentTimeMillis();
+        long targetTick = (now - expireMillis) / tickMillis;
+        //After a long pause every bucket is visited once.
+        long tick = Math.max(expiredTick + 1, targetTick - buckets.length() + 1);
+        int evicted = 0;
+        for(;tick <= targetTick;tick++){
+            FairPoolUserQueue<T> userQueue = buckets.getAndSet((int) (tick % buckets.length()), null);
+            while(userQueue != null){
+                FairPoolUserQueue<T> next = userQueue.getNextInBucket();
+                userQueue.setNextInBucket(null);
+                userQueue.clearInExpiryBucket();
+                if(!userQueue.isRetired() && userQueue.isIdle()){
+                    long activeTick = userQueue.getActiveTs() / tickMillis;
+                    if(activeTick > targetTick || !evictor.test(userQueue)){
+                        if(userQueue.markInExpiryBucket()){
+                            push(userQueue, Math.max(activeTick, targetTick + 1));
+                        }
+                    } else {
+                        evicted++;
+                    }
+                }
+                userQueue = next;
+            }
+        }
+        expiredTick = targetTick;
+        return evicted;
+    }
+}
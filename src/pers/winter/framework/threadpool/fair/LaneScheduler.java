@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+/**
+ * Splits the schedule into priority lanes, each lane is scheduled by its own scheduler of the executor schedule mode.
+ * A user queue is scheduled into the highest priority lane it has tasks in.
+ * <ul>
+ *     <li>{@link FairPoolExecutor.LanePolicy#STRICT}: workers always poll lane 0 first, lower lanes only run while higher lanes are empty.</li>
+ *     <li>{@link FairPoolExecutor.LanePolicy#WEIGHTED}: every worker polls the lanes in a smooth weighted round-robin order,
+ *     falling back to the other lanes by priority when the chosen one is empty, so low lanes are never starved.</li>
+ * </ul>
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+class LaneScheduler<T> implements IFairPoolScheduler<T> {
+    private final IFairPoolScheduler<T>[] lanes;
+    //Lane to poll first in each step of the weighted round-robin, null for strict priority.
+    private final int[] sequence;
+    //Position in the sequence of each worker, only used by the worker itself.
+    private final int[] cursors;
+
+    LaneScheduler(IFairPoolScheduler<T>[] lanes, int[] weights, int threadCount){
+        this.lanes = lanes;
+        this.sequence = weights == null ? null : buildSequence(weights);
+        this.cursors = new int[threadCount];
+    }
+
+    @Override
+    public int schedule(FairPoolUserQueue<T> userQueue, FairPoolThread<T> current) {
+        return lanes[userQueue.getScheduleLane()].schedule(userQueue, current);
+    }
+
+    @Override
+    public FairPoolUserQueue<T> poll(int workerIndex) {
+        if(sequence != null){
+            int cursor = cursors[workerIndex];
+            cursors[workerIndex] = cursor + 1 == sequence.length ? 0 : cursor + 1;
+            FairPoolUserQueue<T> userQueue = lanes[sequence[cursor]].poll(workerIndex);
+            if(userQueue != null){
+                return userQueue;
+            }
+        }
+        for(int i = 0;i < lanes.length;i++){
+            FairPoolUserQueue<T> userQueue = lanes[i].poll(workerIndex);
+            if(userQueue != null){
+                return userQueue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(int i = 0;i < lanes.length;i++){
+            size += lanes[i].size();
+        }
+        return size;
+    }
+
+    /**
+     * Smooth weighted round-robin, weights 4,2,1 give 0,1,0,2,0,1,0 rather than 0,0,0,0,1,1,2.
+     */
+    private static int[] buildSequence(int[] weights){
+        int total = 0;
+        for(int weight : weights){
+            total += weight;
+        }
+        int[] sequence = new int[total];
+        int[] current = new int[weights.length];
+        for(int i = 0;i < total;i++){
+            int best = 0;
+            for(int lane = 0;lane < weights.length;lane++){
+                current[lane] += weights[lane];
+                if(current[lane] > current[best]){
+                    best = lane;
+                }
+            }
+            current[best] -= total;
+            sequence[i] = best;
+        }
+        return sequence;
+    }
+}
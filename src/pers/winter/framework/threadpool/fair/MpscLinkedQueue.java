@@ -0,0 +1,160 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free, unbounded, multi-producer single-consumer linked queue.
+ * Producers only swap the tail, so {@link #offer(Object)} never blocks and never contends with the consumer.
+ * {@link #poll()}, {@link #peek()} and {@link #isEmpty()} must only be called by the single consumer.
+ * @param <E> Class type of the elements
+ * @author Winter
+ */
+class MpscLinkedQueue<E> {
+    private static final VarHandle TAIL;
+    private static final VarHandle NEXT;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TAIL = lookup.findVarHandle(MpscLinkedQueue.class, "tail", Node.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    //Consumer side, the head node is always a consumed (or stub) node.
+    private Node<E> head;
+    //Producer side.
+    private volatile Node<E> tail;
+    private final AtomicInteger size = new AtomicInteger();
+    //Timestamp and deadline of the element returned by the last poll, consumer only.
+    private long polledTimestamp;
+    private long polledDeadline;
+
+    MpscLinkedQueue(){
+        Node<E> stub = new Node<>(null, 0, 0);
+        head = stub;
+        tail = stub;
+    }
+
+    /**
+     * Add an element to the tail of the queue, can be called by any thread.
+     */
+    void offer(E e){
+        offer(e, 0);
+    }
+
+    /**
+     * Add an element with a timestamp to the tail of the queue, can be called by any thread.
+     * The timestamp is returned by {@link #getPolledTimestamp()} after the element is polled.
+     */
+    void offer(E e, long timestamp){
+        offer(e, timestamp, 0);
+    }
+
+    /**
+     * Add an element with a timestamp and a deadline to the tail of the queue, can be called by any thread.
+     * The deadline is returned by {@link #getPolledDeadline()} after the element is polled.
+     */
+    void offer(E e, long timestamp, long deadline){
+        Node<E> node = new Node<>(e, timestamp, deadline);
+        size.incrementAndGet();
+        @SuppressWarnings("unchecked")
+        Node<E> prev = (Node<E>) TAIL.getAndSet(this, node);
+        NEXT.setRelease(prev, node);
+    }
+
+    /**
+     * Remove and return the head element, or null if the queue is empty. Consumer only.
+     */
+    E poll(){
+        Node<E> next = nextOfHead();
+        if(next == null){
+            return null;
+        }
+        E e = next.item;
+        next.item = null;
+        polledTimestamp = next.timestamp;
+        polledDeadline = next.deadline;
+        head = next;
+        size.decrementAndGet();
+        return e;
+    }
+
+    /**
+     * Timestamp of the element returned by the last poll. Consumer only.
+     */
+    long getPolledTimestamp(){
+        return polledTimestamp;
+    }
+
+    /**
+     * Deadline of the element returned by the last poll. Consumer only.
+     */
+    long getPolledDeadline(){
+        return polledDeadline;
+    }
+
+    /**
+     * Return the head element without removing it, or null if the queue is empty. Consumer only.
+     */
+    E peek(){
+        Node<E> next = nextOfHead();
+        return next == null ? null : next.item;
+    }
+
+    /**
+     * Whether the queue is empty, an element being linked by a producer counts as not empty. Consumer only.
+     */
+    boolean isEmpty(){
+        return head == tail;
+    }
+
+    /**
+     * Estimated count of elements, can be called by any thread.
+     */
+    int size(){
+        return Math.max(size.get(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<E> nextOfHead(){
+        Node<E> h = head;
+        Node<E> next = (Node<E>) NEXT.getAcquire(h);
+        if(next == null && h != tail){
+            //A producer has swapped the tail but not linked the node yet, it will be done in a few instructions.
+            while((next = (Node<E>) NEXT.getAcquire(h)) == null){
+                Thread.onSpinWait();
+            }
+        }
+        return next;
+    }
+
+    private static class Node<E> {
+        private E item;
+        private final long timestamp;
+        private final long deadline;
+        private volatile Node<E> next;
+        private Node(E item, long timestamp, long deadline){
+            this.item = item;
+            this.timestamp = timestamp;
+            this.deadline = deadline;
+        }
+    }
+}
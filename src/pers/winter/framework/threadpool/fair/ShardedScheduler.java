@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+/**
+ * Every producer id is bound to a fixed worker by its hash, and every worker owns a lock-free single-consumer queue.
+ * Tasks of one producer always run on the same worker, so its data keeps hot in one core and there is no global handoff.
+ * Fairness only applies between the producers bound to the same worker, and a busy worker is never helped by idle ones.
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+class ShardedScheduler<T> implements IFairPoolScheduler<T> {
+    private final MpscLinkedQueue<FairPoolUserQueue<T>>[] shards;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ShardedScheduler(int workerCount){
+        shards = new MpscLinkedQueue[workerCount];
+        for(int i = 0;i<workerCount;i++){
+            shards[i] = new MpscLinkedQueue<>();
+        }
+    }
+
+    @Override
+    public int schedule(FairPoolUserQueue<T> userQueue, FairPoolThread<T> current) {
+        int index = shardOf(userQueue.getId());
+        shards[index].offer(userQueue);
+        return index;
+    }
+
+    @Override
+    public FairPoolUserQueue<T> poll(int workerIndex) {
+        return shards[workerIndex].poll();
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for(MpscLinkedQueue<FairPoolUserQueue<T>> shard:shards){
+            total += shard.size();
+        }
+        return total;
+    }
+
+    private int shardOf(Object id){
+        int h = id.hashCode();
+        //Spread the high bits, ids such as user ids are often sequential or share low bits.
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.framework.threadpool.fair;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every worker owns a deque of user queues.
+ * A user queue rescheduled by a worker stays in the tail of that worker's deque, so its data keeps hot in the same core,
+ * while the owner polls from the head, keeping round-robin order between the user queues it owns.
+ * New user queues from producers are spread over the workers, and an idle worker steals from the tail of the others.
+ * @param <T> Class type of the tasks
+ * @author Winter
+ */
+class WorkStealingScheduler<T> implements IFairPoolScheduler<T> {
+    private final ConcurrentLinkedDeque<FairPoolUserQueue<T>>[] deques;
+    private final AtomicInteger nextExternal = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    WorkStealingScheduler(int workerCount){
+        deques = new ConcurrentLinkedDeque[workerCount];
+        for(int i = 0;i<workerCount;i++){
+            deques[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    @Override
+    public int schedule(FairPoolUserQueue<T> userQueue, FairPoolThread<T> current) {
+        int index;
+        if(current != null){
+            index = current.getIndex();
+        } else {
+            index = (nextExternal.getAndIncrement() & Integer.MAX_VALUE) % deques.length;
+        }
+        deques[index].offerLast(userQueue);
+        return -1;
+    }
+
+    @Override
+    public FairPoolUserQueue<T> poll(int workerIndex) {
+        FairPoolUserQueue<T> userQueue = deques[workerIndex].pollFirst();
+        if(userQueue != null){
+            return userQueue;
+        }
+        for(int i = 1;i<deques.length;i++){
+            userQueue = deques[(workerIndex + i) % deques.length].pollLast();
+            if(userQueue != null){
+                return userQueue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for(ConcurrentLinkedDeque<FairPoolUserQueue<T>> deque:deques){
+            total += deque.size();
+        }
+        return total;
+    }
+}
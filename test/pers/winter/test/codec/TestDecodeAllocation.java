@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.codec;
+
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import pers.winter.framework.server.codec.Constants;
+import pers.winter.framework.server.codec.JsonMessageDictionary;
+import pers.winter.framework.server.codec.MessageBroadcaster;
+import pers.winter.framework.server.codec.MessageDecoder;
+import pers.winter.framework.server.codec.ProtoMessageDictionary;
+import pers.winter.message.json.Hello;
+import pers.winter.message.proto.Demo;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+
+/**
+ * Measure the heap bytes allocated per decoded message, by copying the package into an array first as the decoder
+ * used to do, and by the decoder reading the buffer directly.
+ * Arguments: the count of messages to decode for each case, 1000000 by default.
+ */
+public class TestDecodeAllocation {
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Hello json = new Hello();
+        json.time = System.currentTimeMillis();
+        json.data = "Hello from the allocation test!";
+        Demo.Hello proto = Demo.Hello.newBuilder().setTime(json.time).setData(json.data).build();
+        MessageDecoder decoder = new MessageDecoder();
+        ByteBuf jsonPackage = MessageBroadcaster.encode(json);
+        ByteBuf protoPackage = MessageBroadcaster.encode(proto);
+        try{
+            measure("JSON  copied", jsonPackage, count, TestDecodeAllocation::decodeCopied);
+            measure("JSON  direct", jsonPackage, count, decoder::decode);
+            measure("Proto copied", protoPackage, count, TestDecodeAllocation::decodeCopied);
+            measure("Proto direct", protoPackage, count, decoder::decode);
+        } finally {
+            jsonPackage.release();
+            protoPackage.release();
+        }
+    }
+
+    private static void measure(String name, ByteBuf pack, int count, Function<ByteBuf, Object> decode){
+        //Warm up the code paths before measuring.
+        run(pack, count / 10 + 1, decode);
+        long threadId = Thread.currentThread().getId();
+        long bytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long st = System.nanoTime();
+        run(pack, count, decode);
+        long nanos = System.nanoTime() - st;
+        bytes = THREAD_BEAN.getThreadAllocatedBytes(threadId) - bytes;
+        System.out.printf("%s: %d bytes/message, %d ns/message, %d bytes package%n", name, bytes / count, nanos / count, pack.readableBytes());
+    }
+
+    private static void run(ByteBuf pack, int count, Function<ByteBuf, Object> decode){
+        for(int i = 0;i < count;++i){
+            ByteBuf frame = pack.duplicate();
+            if(decode.apply(frame) == null){
+                throw new IllegalStateException("Decode failed!");
+            }
+        }
+    }
+
+    /**
+     * The previous decoding, which copied the package into a new array, and the JSON text into a new String.
+     */
+    private static Object decodeCopied(ByteBuf byteBuf){
+        int length = byteBuf.readInt();
+        byte decoderFlag = byteBuf.readByte();
+        int messageID = byteBuf.readInt();
+        byte[] bytes = new byte[length - Constants.ENCODE_HEADER_LENGTH];
+        byteBuf.readBytes(bytes);
+        try{
+            if(decoderFlag == Constants.CODEC_JSON){
+                return JSON.parseObject(new String(bytes), JsonMessageDictionary.getMessageClass(messageID));
+            }
+            return ProtoMessageDictionary.getMessageParser(messageID).parseFrom(bytes);
+        } catch (Exception e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.message;
+
+import pers.winter.framework.message.AbstractBaseMessage;
+import pers.winter.framework.message.IMessageInvoker;
+import pers.winter.framework.server.codec.JsonMessageDictionary;
+import pers.winter.message.json.ActionFail;
+import pers.winter.message.json.Bye;
+import pers.winter.message.json.Hello;
+import pers.winter.message.multiroles.login.RoleLogin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the message dispatch of the message center, a class keyed map with method handles against an id indexed array
+ * with LambdaMetafactory invokers. A plain main benchmark with warm-up rounds, JMH is not among the project libraries.
+ */
+public class TestMessageDispatch {
+    private static final int ROUNDS = 10;
+    private static final int MESSAGES_PER_ROUND = 20_000_000;
+
+    public static class DispatchService {
+        private long count;
+        public void hello(Hello message){count += 1;}
+        public void bye(Bye message){count += 2;}
+        public void fail(ActionFail message){count += 3;}
+        public void login(RoleLogin message){count += 4;}
+    }
+
+    public static void main(String[] args) throws Exception {
+        DispatchService service = new DispatchService();
+        AbstractBaseMessage[] messages = {new Hello(), new Bye(), new ActionFail(), new RoleLogin()};
+        Map<Class<?>, MethodHandle> handleMap = new HashMap<>();
+        IMessageInvoker[] invokerTable = new IMessageInvoker[JsonMessageDictionary.getMaxMessageID() + 1];
+        for(Method method : DispatchService.class.getDeclaredMethods()){
+            Class<?> messageClass = method.getParameterTypes()[0];
+            MethodHandle methodHandle = MethodHandles.publicLookup().unreflect(method);
+            handleMap.put(messageClass, methodHandle.asType(MethodType.methodType(void.class, List.of(Object.class, AbstractBaseMessage.class))));
+            invokerTable[JsonMessageDictionary.getMessageIDOrZero(messageClass)] = IMessageInvoker.create(service, method);
+        }
+        for(AbstractBaseMessage message : messages){
+            message.setMessageID(JsonMessageDictionary.getMessageIDOrZero(message.getClass()));
+        }
+        for(int round = 0;round < ROUNDS;round++){
+            long st = System.nanoTime();
+            for(int i = 0;i < MESSAGES_PER_ROUND;i++){
+                AbstractBaseMessage message = messages[i & 3];
+                try{
+                    handleMap.get(message.getClass()).invokeExact((Object) service, message);
+                } catch (Throwable e){
+                    throw new RuntimeException(e);
+                }
+            }
+            long mapNanos = System.nanoTime() - st;
+            st = System.nanoTime();
+            for(int i = 0;i < MESSAGES_PER_ROUND;i++){
+                AbstractBaseMessage message = messages[i & 3];
+                try{
+                    invokerTable[message.getMessageID()].invoke(message);
+                } catch (Throwable e){
+                    throw new RuntimeException(e);
+                }
+            }
+            long tableNanos = System.nanoTime() - st;
+            System.out.printf("Round %d: map + MethodHandle %.2f ns/msg, table + invoker %.2f ns/msg%n", round,
+                    (double) mapNanos / MESSAGES_PER_ROUND, (double) tableNanos / MESSAGES_PER_ROUND);
+        }
+        System.out.println("Checksum: " + service.count);
+    }
+}
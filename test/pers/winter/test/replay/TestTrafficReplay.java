@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.replay;
+
+import pers.winter.example.sdk.SdkCenter;
+import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.entity.EntityManager;
+import pers.winter.framework.message.MessageCenter;
+import pers.winter.framework.monitor.MonitorCenter;
+import pers.winter.framework.server.capture.TrafficReplayer;
+
+import java.nio.file.Paths;
+
+/**
+ * Replay a traffic capture file against the local message center, and print the executor statistics.
+ * Capture production traffic with trafficCaptureFile in application.properties first.
+ * Arguments: the capture file, and the speed, 1 for the captured pace, 0 as fast as possible, 1 by default.
+ */
+public class TestTrafficReplay {
+    public static void main(String[] args) throws Throwable {
+        if(args.length < 1){
+            System.out.println("Usage: TestTrafficReplay <capture file> [speed]");
+            return;
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        ConfigManager.INSTANCE.init();
+        EntityManager.INSTANCE.init();
+        MonitorCenter.INSTANCE.init();
+        SdkCenter.INSTANCE.init();
+        MessageCenter.INSTANCE.start();
+        long st = System.currentTimeMillis();
+        long packets = new TrafficReplayer(Paths.get(args[0]), speed).replay();
+        System.out.println(MessageCenter.INSTANCE.getExecutorStatistics(false));
+        MessageCenter.INSTANCE.terminate();
+        System.out.printf("Replayed %d packages in %d ms.%n", packets, System.currentTimeMillis() - st);
+        System.exit(0);
+    }
+}
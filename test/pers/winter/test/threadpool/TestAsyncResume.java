@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.threadpool;
+
+import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.entity.Transaction;
+import pers.winter.framework.threadpool.IExecutorHandler;
+import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous transactions whose stages complete in a foreign thread, standing for the IO thread of a Redis or DB client.
+ * Check that the callbacks and the commits run on the worker threads of the executor,
+ * and that the tasks of a producer keep their order.
+ */
+public class TestAsyncResume {
+    private static final String EXECUTOR_NAME = "ResumePool";
+    private static final String FOREIGN_NAME = "ForeignIO";
+    private static final int PRODUCERS = 20;
+    private static final int TASKS_PER_PRODUCER = 50;
+
+    public static void main(String[] args) throws Exception {
+        ConfigManager.INSTANCE.init();
+        ExecutorService foreign = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, FOREIGN_NAME));
+        List<String> wrongThreads = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(PRODUCERS * TASKS_PER_PRODUCER);
+        FairPoolExecutor<Integer> executor = new FairPoolExecutor<>(EXECUTOR_NAME, 4, new IExecutorHandler<Integer>() {
+            @Override
+            public void execute(Integer task) {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public CompletionStage<?> executeAsync(Integer task) {
+                Transaction transaction = new Transaction("AsyncResume") {
+                    @Override
+                    protected CompletionStage<?> processAsync() {
+                        CompletableFuture<Integer> remote = CompletableFuture.supplyAsync(() -> task, foreign);
+                        return remote.thenAcceptAsync(value -> {
+                            checkThread("callback", wrongThreads);
+                            order.add(value);
+                        }, continuationExecutor());
+                    }
+                    @Override
+                    protected void process() {}
+                    @Override
+                    protected void committed(int round, boolean success, long nanos) {
+                        checkThread("commit", wrongThreads);
+                    }
+                    @Override
+                    protected void failed() {}
+                };
+                return transaction.runAsync(FairPoolExecutor.resumeExecutor()).whenComplete((v, cause) -> done.countDown());
+            }
+            @Override
+            public void exceptionCaught(Integer task, Throwable cause) {
+                cause.printStackTrace();
+            }
+        });
+        executor.start();
+        for(int i = 0;i < TASKS_PER_PRODUCER;i++){
+            for(int producer = 0;producer < PRODUCERS;producer++){
+                executor.add(producer, producer * TASKS_PER_PRODUCER + i);
+            }
+        }
+        if(!done.await(30, TimeUnit.SECONDS)){
+            System.out.println("Timeout, tasks left: " + done.getCount());
+        }
+        int[] last = new int[PRODUCERS];
+        Arrays.fill(last, -1);
+        int disordered = 0;
+        for(int task : order){
+            int producer = task / TASKS_PER_PRODUCER;
+            if(task <= last[producer]){
+                disordered++;
+            }
+            last[producer] = task;
+        }
+        System.out.printf("Tasks: %d, out of order: %d, run in a wrong thread: %d %s%n", order.size(), disordered, wrongThreads.size(),
+                wrongThreads.isEmpty() ? "" : wrongThreads.subList(0, Math.min(wrongThreads.size(), 5)));
+        executor.terminate(1, TimeUnit.SECONDS);
+        foreign.shutdown();
+        System.exit(wrongThreads.isEmpty() && disordered == 0 && order.size() == PRODUCERS * TASKS_PER_PRODUCER ? 0 : -1);
+    }
+
+    private static void checkThread(String step, List<String> wrongThreads){
+        String thread = Thread.currentThread().getName();
+        if(!thread.startsWith(EXECUTOR_NAME)){
+            wrongThreads.add(step + ":" + thread);
+        }
+    }
+}
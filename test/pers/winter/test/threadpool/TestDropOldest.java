@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.threadpool;
+
+import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.threadpool.IExecutorHandler;
+import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One producer floods the executor under {@link FairPoolExecutor.RejectPolicy#DROP_OLDEST} while its worker is stalled.
+ * Check that the real length of its queue stays bounded, counted by what the worker takes once it is released.
+ */
+public class TestDropOldest {
+    private static final int USER_CAPACITY = 1000;
+    private static final int TASKS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        ConfigManager.INSTANCE.init();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        FairPoolExecutor<Integer> executor = new FairPoolExecutor<>("DropOldestPool", 1, new IExecutorHandler<Integer>() {
+            @Override
+            public void execute(Integer task) throws InterruptedException {
+                if(task == 0){
+                    stalled.countDown();
+                    release.await();
+                    return;
+                }
+                executed.incrementAndGet();
+            }
+            @Override
+            public void exceptionCaught(Integer task, Throwable cause) {
+                cause.printStackTrace();
+            }
+            @Override
+            public void rejected(Integer task) {
+                rejected.incrementAndGet();
+            }
+        });
+        executor.setCapacity(USER_CAPACITY, 0, FairPoolExecutor.RejectPolicy.DROP_OLDEST);
+        executor.start();
+        executor.add(1, 0);
+        stalled.await();
+        for(int i = 1;i <= TASKS;i++){
+            executor.add(1, i);
+        }
+        //Nothing is dropped by the stalled worker, so these are all rejected by the producer side.
+        int rejectedBeforeRelease = rejected.get();
+        release.countDown();
+        executor.terminate(10, TimeUnit.SECONDS);
+        int dropped = rejected.get() - rejectedBeforeRelease;
+        int queueLength = executed.get() + dropped;
+        boolean success = executed.get() == USER_CAPACITY && queueLength <= USER_CAPACITY * 2;
+        System.out.printf("Tasks: %d, rejected while stalled: %d, queue length at release: %d, executed: %d, dropped: %d, %s%n",
+                TASKS, rejectedBeforeRelease, queueLength, executed.get(), dropped, success ? "OK" : "FAILED");
+        System.exit(success ? 0 : -1);
+    }
+}
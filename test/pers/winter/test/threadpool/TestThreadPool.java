@@ -19,7 +19,7 @@ import pers.winter.framework.threadpool.IExecutorHandler;
 import pers.winter.framework.threadpool.fair.FairPoolExecutor;
 
 public class TestThreadPool {
-    public static void testFairPool() throws InterruptedException {
+    public static void testFairPool(FairPoolExecutor.ScheduleMode scheduleMode) throws InterruptedException {
         final int producerCount = 10;
         final int taskPerProducer = 10;
         FairPoolExecutor<Integer> executor = new FairPoolExecutor<Integer>("TestPool", 3, new IExecutorHandler<Integer>() {
@@ -33,6 +33,7 @@ public class TestThreadPool {
                 System.exit(-1);
             }
         });
+        executor.setScheduleMode(scheduleMode);
         executor.start();
         for(int i = 0; i < producerCount; i++){
             Thread t = new Thread(()->{
@@ -58,6 +59,8 @@ public class TestThreadPool {
         }
     }
     public static void main(String[] args) throws Exception {
-        testFairPool();
+        testFairPool(FairPoolExecutor.ScheduleMode.GLOBAL);
+        testFairPool(FairPoolExecutor.ScheduleMode.WORK_STEALING);
+        testFairPool(FairPoolExecutor.ScheduleMode.SHARDED);
     }
 }
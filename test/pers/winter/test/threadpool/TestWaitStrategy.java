@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Winter Game Server
+ *
+ * The Winter Game Server licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package pers.winter.test.threadpool;
+
+import pers.winter.framework.config.ConfigManager;
+import pers.winter.framework.monitor.LatencyHistogram;
+import pers.winter.framework.threadpool.IExecutorHandler;
+import pers.winter.framework.threadpool.fair.FairPoolExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compare the wake-up latency and the CPU cost of the wait strategies.
+ * A producer adds a task every interval, so the workers are idle between tasks, the latency is measured from add to execute.
+ */
+public class TestWaitStrategy {
+    private static final int THREAD_COUNT = 4;
+    private static final int TASK_COUNT = 20000;
+
+    public static void testWaitStrategy(FairPoolExecutor.WaitStrategy waitStrategy, long intervalMicros) throws InterruptedException {
+        LatencyHistogram wakeLatency = new LatencyHistogram();
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        FairPoolExecutor<Long> executor = new FairPoolExecutor<>("TestWait", THREAD_COUNT, new IExecutorHandler<Long>() {
+            @Override
+            public void execute(Long addNanos) {
+                wakeLatency.record(System.nanoTime() - addNanos);
+                done.countDown();
+            }
+            @Override
+            public void exceptionCaught(Long task, Throwable cause) {
+                cause.printStackTrace();
+            }
+        });
+        executor.setWaitStrategy(waitStrategy, 10000, 100);
+        executor.start();
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime();
+        long st = System.nanoTime();
+        for(int i = 0;i < TASK_COUNT;i++){
+            executor.add(i, System.nanoTime());
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(intervalMicros));
+        }
+        done.await();
+        long wall = System.nanoTime() - st;
+        long cpu = os.getProcessCpuTime() - cpuStart;
+        executor.terminate(true);
+        LatencyHistogram.Snapshot snapshot = wakeLatency.snapshot(false);
+        System.out.printf("%-15s interval=%5dus p50=%6dus p99=%6dus max=%7dus cpu=%.2f cores%n", waitStrategy, intervalMicros,
+                TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(50)), TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(snapshot.getMax()), (double) cpu / wall);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigManager.INSTANCE.init();
+        for(long interval : new long[]{50, 1000}){
+            for(FairPoolExecutor.WaitStrategy waitStrategy : FairPoolExecutor.WaitStrategy.values()){
+                testWaitStrategy(waitStrategy, interval);
+            }
+        }
+        System.exit(0);
+    }
+}